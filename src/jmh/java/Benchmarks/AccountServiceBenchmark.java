@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Service.AccountService;
+
+/**
+ * Login end to end, minus HTTP: the lookup by username and the password hash check on the password bulkhead.
+ * The cost is dominated by the work factor, which can be changed for the forked JVM with
+ * -Djmh.args="-jvmArgsAppend -Daccount.password.iterations=N AccountServiceBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    private AccountService accountService;
+    private final Account login = new Account("testuser1", "password");
+
+    /**
+     * Seeds the database and logs in once, which replaces the test account's plaintext password with a hash.
+     */
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkData.seed(1000);
+        accountService = new AccountService();
+        accountService.verifyAccountDetails(login);
+    }
+
+    @Benchmark
+    public Account verifyAccountDetails() {
+        return accountService.verifyAccountDetails(login);
+    }
+}
@@ -0,0 +1,62 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDao;
+import DAO.MessageDao;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Seeds the database the benchmarks run against. The schema is reset first, exactly as the tests do, so every
+ * trial starts from the same known rows.
+ */
+final class BenchmarkData {
+    /**
+     * Number of accounts created; messages are spread evenly across them.
+     */
+    static final int ACCOUNTS = 100;
+    /**
+     * Password given to every seeded account.
+     */
+    static final String PASSWORD = "benchmark-password";
+
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Resets the database and fills it with ACCOUNTS accounts and the given number of messages. The test
+     * script's own account and message are kept, so account 1 and message 1 always exist.
+     * @param messages The total number of messages the table should hold afterwards.
+     */
+    static void seed(int messages) {
+        ConnectionUtil.resetTestDatabase();
+        AccountDao accountDao = new AccountDao();
+        for(int i = 2; i <= ACCOUNTS; i++){
+            accountDao.registerUser(new Account(username(i), PASSWORD));
+        }
+        MessageDao messageDao = new MessageDao();
+        List<Message> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+        for(int i = 2; i <= messages; i++){
+            chunk.add(new Message(1 + i % ACCOUNTS, "benchmark message " + i, 1669947792L + i));
+            if(chunk.size() == SEED_CHUNK_SIZE){
+                messageDao.addMessages(chunk);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()){
+            messageDao.addMessages(chunk);
+        }
+    }
+
+    /**
+     * @return the username of the seeded account with the given ID.
+     */
+    static String username(int account_id) {
+        return "benchmark-user-" + account_id;
+    }
+}
@@ -0,0 +1,71 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDao;
+import DAO.MessageDao;
+import Model.Account;
+import Model.Message;
+
+/**
+ * Throughput of the DAO calls behind each endpoint, against the H2 database seeded with the given number of
+ * messages. addMessage grows the table during the trial; the table is reseeded before each trial so every
+ * parameter combination starts from the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    @Param({"1000", "100000"})
+    public int messages;
+
+    private MessageDao messageDao;
+    private AccountDao accountDao;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkData.seed(messages);
+        messageDao = new MessageDao();
+        accountDao = new AccountDao();
+    }
+
+    @Benchmark
+    public Message getMessage() {
+        return messageDao.getMessage(1 + ThreadLocalRandom.current().nextInt(messages));
+    }
+
+    @Benchmark
+    public Message addMessage() {
+        return messageDao.addMessage(new Message(1, "benchmark insert", 1669947792L));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDao.getAllMessages();
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        int account_id = 2 + ThreadLocalRandom.current().nextInt(BenchmarkData.ACCOUNTS - 1);
+        return accountDao.getAccount(BenchmarkData.username(account_id));
+    }
+}
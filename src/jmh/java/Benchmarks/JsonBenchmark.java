@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Util.JacksonJsonMapper;
+
+/**
+ * Cost of turning request bodies into models and models into response bodies, with a new ObjectMapper per
+ * request, as the handlers used to do, against the shared mapper and its prebuilt readers and writers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final Message message = new Message(1, 1, "test message 1", 1669947792);
+    private final Account account = new Account(1, "testuser1", "password");
+    private final String messageJson = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947793}";
+    private final String accountJson = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+
+    @Benchmark
+    public String writeMessagePerRequestMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String writeMessageSharedWriter() throws Exception {
+        return JacksonJsonMapper.MESSAGE_WRITER.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Message readMessagePerRequestMapper() throws Exception {
+        return new ObjectMapper().readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public Message readMessageSharedReader() throws Exception {
+        return JacksonJsonMapper.MESSAGE_READER.readValue(messageJson);
+    }
+
+    @Benchmark
+    public String writeAccountPerRequestMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(account);
+    }
+
+    @Benchmark
+    public String writeAccountSharedWriter() throws Exception {
+        return JacksonJsonMapper.ACCOUNT_WRITER.writeValueAsString(account);
+    }
+
+    @Benchmark
+    public Account readAccountPerRequestMapper() throws Exception {
+        return new ObjectMapper().readValue(accountJson, Account.class);
+    }
+
+    @Benchmark
+    public Account readAccountSharedReader() throws Exception {
+        return JacksonJsonMapper.ACCOUNT_READER.readValue(accountJson);
+    }
+}
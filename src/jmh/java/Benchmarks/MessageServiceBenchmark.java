@@ -0,0 +1,52 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.JacksonJsonMapper;
+
+/**
+ * The create-message path end to end, minus HTTP: parse the request body, validate it and check the poster
+ * exists, insert the row, cache it, and write the response body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+
+    @Param({"1000"})
+    public int messages;
+
+    private MessageService messageService;
+    private final String body = "{\"posted_by\":1,\"message_text\":\"benchmark insert\",\"time_posted_epoch\":1669947793}";
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkData.seed(messages);
+        messageService = new MessageService(new AccountService());
+    }
+
+    @Benchmark
+    public String createMessage() throws Exception {
+        Message message = JacksonJsonMapper.MESSAGE_READER.readValue(body);
+        return JacksonJsonMapper.MESSAGE_WRITER.writeValueAsString(messageService.createMessage(message));
+    }
+}
@@ -3,13 +3,51 @@ package Controller;
 import Service.AccountService;
 import Service.MessageService;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import DAO.MemoryStore;
+import DAO.Storage;
 import Model.Account;
+import Model.BatchResult;
 import Model.Message;
+import Util.Bulkhead;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.EntityTags;
+import Util.JacksonJsonMapper;
+import Util.Metrics;
+import Util.PageCursor;
+import Util.ResponseCompression;
+import Util.SearchIndex;
+import Util.SessionTokens;
+import Util.VirtualThreadPool;
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.UnauthorizedResponse;
+
+import org.eclipse.jetty.server.Server;
 
 /**
  * Controller class for handling HTTP requests related to social media operations.
@@ -18,43 +56,329 @@ public class SocialMediaController {
     AccountService accountService;
     MessageService messageService;
 
+    /**
+     * Seconds a client is told to wait before retrying a request that was shed. Can be overridden with
+     * -Dbulkhead.retryAfterSeconds.
+     */
+    private static final int RETRY_AFTER_SECONDS = Integer.getInteger("bulkhead.retryAfterSeconds", 1);
+
+    /**
+     * Response header that carries the session token issued at registration and login. Clients send it back as
+     * Authorization: Bearer &lt;token&gt;.
+     */
+    public static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    /**
+     * Whether creating messages requires a session token. On by default, so a message is always posted by the
+     * account its token names and posted_by in the body cannot be used to post as someone else. Only clients
+     * that predate session tokens need -Dsession.required=false, which lets a request without a token post as
+     * the posted_by in its body. Read when the controller is created.
+     */
+    private final boolean sessionRequired = Boolean.parseBoolean(System.getProperty("session.required", "true"));
+
+    /**
+     * Context attribute holding the account a verified session token was issued to.
+     */
+    private static final String ACCOUNT_ID_ATTRIBUTE = "account_id";
+
+    /**
+     * Issues and checks session tokens, configured with -Dsession.keys and -Dsession.ttlSeconds.
+     */
+    private final SessionTokens sessionTokens = SessionTokens.fromSystemProperties();
+
+    /**
+     * Encoded list responses by content coding, data version and request URI, so a list that has not changed is
+     * read, serialized and compressed once however often it is polled. Entries for old versions are never asked
+     * for again and age out. Bounded by total size with -Dcompression.cache.maxBytes.
+     */
+    private final Cache<String, ResponseCompression.Body> listResponses = Caffeine.newBuilder()
+            .maximumWeight(Long.getLong("compression.cache.maxBytes", 16 * 1024 * 1024))
+            .weigher((String key, ResponseCompression.Body body) -> key.length() + body.getBytes().length)
+            .recordStats()
+            .build();
+
+    /**
+     * Exports that failed reading the database, after which the body was ended with an error record.
+     */
+    private final LongAdder exportFailures = new LongAdder();
+
+    /**
+     * Runs the message and account read handlers. Sized with -Dbulkhead.read.threads and -Dbulkhead.read.queueSize.
+     */
+    private Bulkhead readBulkhead;
+    /**
+     * Runs the handlers that create, update and delete messages. Sized with -Dbulkhead.write.threads and
+     * -Dbulkhead.write.queueSize.
+     */
+    private Bulkhead writeBulkhead;
+    /**
+     * Runs registration and login, so they keep working while reads or writes are backed up. Its workers wait
+     * on the password bulkhead, so by default there are enough of them to keep every core hashing. Sized with
+     * -Dbulkhead.auth.threads and -Dbulkhead.auth.queueSize.
+     */
+    private Bulkhead authBulkhead;
+    /**
+     * Runs message exports, which hold a worker for as long as the client takes to read the whole table, so
+     * slow export clients cannot occupy the read workers. Sized with -Dbulkhead.export.threads and
+     * -Dbulkhead.export.queueSize.
+     */
+    private Bulkhead exportBulkhead;
+
     /**
      * Constructor that initializes the AccountService and MessageService.
      */
     public SocialMediaController(){
         accountService = new AccountService();
         messageService = new MessageService(accountService);
+        createBulkheads(false);
+        registerMetrics();
+    }
+
+    /**
+     * Creates the read, write, auth and export bulkheads. With virtual threads each handler runs on its own virtual
+     * thread and the thread counts bound how many run at once, so a handler waiting on JDBC parks a virtual
+     * thread rather than holding a platform worker; otherwise each bulkhead has that many platform workers.
+     * @param virtualThreads whether the handlers should run on virtual threads.
+     */
+    private void createBulkheads(boolean virtualThreads){
+        readBulkhead = newBulkhead("read", Integer.getInteger("bulkhead.read.threads", 8),
+                Integer.getInteger("bulkhead.read.queueSize", 256), virtualThreads);
+        writeBulkhead = newBulkhead("write", Integer.getInteger("bulkhead.write.threads", 4),
+                Integer.getInteger("bulkhead.write.queueSize", 128), virtualThreads);
+        authBulkhead = newBulkhead("auth",
+                Integer.getInteger("bulkhead.auth.threads", Math.max(2, 2 * Runtime.getRuntime().availableProcessors())),
+                Integer.getInteger("bulkhead.auth.queueSize", 64), virtualThreads);
+        exportBulkhead = newBulkhead("export", Integer.getInteger("bulkhead.export.threads", 2),
+                Integer.getInteger("bulkhead.export.queueSize", 8), virtualThreads);
+    }
+
+    private static Bulkhead newBulkhead(String name, int threads, int queueSize, boolean virtualThreads){
+        return virtualThreads ? Bulkhead.virtual(name, threads, queueSize) : new Bulkhead(name, threads, queueSize);
     }
 
     /**
-     * Configures and starts the Javalin API server with the defined endpoints.
+     * Configures and starts the Javalin API server with the defined endpoints. Requests run on virtual threads
+     * if the server.virtualThreads system property is true, and on Jetty's platform thread pool otherwise.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::postUserRegisterHandler);
-        app.post("/login", this::postUserLoginHandler);
-        app.post("messages", this::postMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
-        app.patch("/messages/{message_id}", this::patchMessageHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesByUserHandler);
+        return startAPI(Boolean.getBoolean("server.virtualThreads"));
+    }
+
+    /**
+     * Configures and starts the Javalin API server with the defined endpoints. Responses other than the message
+     * lists are gzipped by Javalin as they are written, with the same level and size threshold the lists use.
+     * @param virtualThreads whether each request, and each handler on its bulkhead, should run on its own
+     * virtual thread. This needs JDK 21; on an older JDK the server falls back to platform threads.
+     * @return a Javalin app object which defines the behavior of the Javalin controller.
+     */
+    public Javalin startAPI(boolean virtualThreads) {
+        if(virtualThreads && VirtualThreadPool.isSupported()){
+            createBulkheads(true);
+            registerMetrics();
+        }
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(new JacksonJsonMapper());
+            CompressionStrategy compression = new CompressionStrategy(null, new Gzip(ResponseCompression.LEVEL));
+            compression.setMinSizeForCompression(ResponseCompression.MIN_SIZE);
+            config.compression.custom(compression);
+            if(virtualThreads){
+                if(VirtualThreadPool.isSupported()){
+                    config.jetty.server(() -> new Server(new VirtualThreadPool()));
+                } else {
+                    System.out.println("Virtual threads are not available on this JDK, using the platform thread pool");
+                }
+            }
+        });
+        app.before(this::authenticate);
+        route(app, HandlerType.POST, "/register", authBulkhead, this::postUserRegisterHandler);
+        route(app, HandlerType.POST, "/login", authBulkhead, this::postUserLoginHandler);
+        route(app, HandlerType.POST, "/messages", writeBulkhead, this::postMessageHandler);
+        route(app, HandlerType.POST, "/messages/batch", writeBulkhead, this::postMessageBatchHandler);
+        route(app, HandlerType.DELETE, "/messages/batch", writeBulkhead, this::deleteMessageBatchHandler);
+        route(app, HandlerType.GET, "/messages", readBulkhead, this::getAllMessagesHandler);
+        route(app, HandlerType.GET, "/messages/export", exportBulkhead, this::exportMessagesHandler);
+        route(app, HandlerType.GET, "/messages/search", readBulkhead, this::searchMessagesHandler);
+        route(app, HandlerType.GET, "/messages/{message_id}", readBulkhead, this::getMessageByIdHandler);
+        route(app, HandlerType.DELETE, "/messages/{message_id}", writeBulkhead, this::deleteMessageHandler);
+        route(app, HandlerType.PATCH, "/messages/{message_id}", writeBulkhead, this::patchMessageHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/messages", readBulkhead, this::getAllMessagesByUserHandler);
+        app.get("/metrics", this::getMetricsHandler);
         return app;
     }
 
+    /**
+     * @return the read, write, auth, export and password bulkheads, for reporting their queue depths and
+     * rejection counts.
+     */
+    public List<Bulkhead> getBulkheads() {
+        return Arrays.asList(readBulkhead, writeBulkhead, authBulkhead, exportBulkhead, AccountService.getPasswordBulkhead());
+    }
+
+    /**
+     * Registers a handler that runs on a bulkhead and records its latency, status codes and in-flight count.
+     */
+    private static void route(Javalin app, HandlerType type, String path, Bulkhead bulkhead, Handler handler) {
+        app.addHandler(type, path, inBulkhead(bulkhead, Metrics.route(type.name(), path), handler));
+    }
+
+    /**
+     * Wraps a handler so it runs on a bulkhead's workers and the Jetty thread is released while it waits for
+     * the database. If the bulkhead's queue is full, or the handler is itself turned away by a bulkhead such as
+     * the password one, the request is answered at once with a 503 status code and a Retry-After header. The request is timed from its arrival, so the time spent queued
+     * for a worker is included.
+     * @param bulkhead The bulkhead to run the handler on.
+     * @param metrics The metrics of the route being handled.
+     * @param handler The handler doing the blocking work.
+     * @return a handler that submits the work asynchronously.
+     */
+    private static Handler inBulkhead(Bulkhead bulkhead, Metrics.Route metrics, Handler handler) {
+        return context -> {
+            long start = metrics.start();
+            context.future(() -> {
+                CompletableFuture<Object> result;
+                try {
+                    result = bulkhead.submit(() -> {
+                        try {
+                            handler.handle(context);
+                        } catch(RejectedExecutionException e){
+                            shed(context);
+                        }
+                        return null;
+                    });
+                } catch(RejectedExecutionException e){
+                    shed(context);
+                    metrics.finish(start, 503);
+                    return CompletableFuture.completedFuture(null);
+                }
+                return result.whenComplete((ignored, failure) ->
+                        metrics.finish(start, failure == null ? context.statusCode() : 500));
+            });
+        };
+    }
+
+    /**
+     * Answers a request that was turned away for lack of capacity.
+     */
+    private static void shed(Context context) {
+        context.status(503);
+        context.header(Header.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+    }
+
+    /**
+     * Publishes the statistics the services, bulkheads and connection pool already keep, so they are reported
+     * at /metrics next to the request and query timings. A later controller replaces these sources.
+     */
+    private void registerMetrics() {
+        for(Bulkhead bulkhead : getBulkheads()){
+            String labels = "bulkhead=\"" + bulkhead.getName() + "\"";
+            Metrics.gauge("bulkhead_queue_depth", "Tasks waiting for a bulkhead worker.",
+                    labels, bulkhead::getQueueDepth);
+            Metrics.gauge("bulkhead_active_workers", "Bulkhead workers running a task.",
+                    labels, bulkhead::getActiveCount);
+            Metrics.counter("bulkhead_rejected_total", "Requests shed because the bulkhead queue was full.",
+                    labels, bulkhead::getRejectedCount);
+        }
+        if(Storage.isMemory()){
+            MemoryStore store = Storage.memoryStore();
+            Metrics.counter("memory_store_sync_failures_total", "Timed write-ahead log syncs that failed.",
+                    "", store::getSyncFailures);
+            Metrics.counter("memory_store_snapshot_failures_total", "Background snapshots of the in-memory store that failed.",
+                    "", store::getSnapshotFailures);
+        } else {
+            ConnectionPool pool = ConnectionUtil.getPool();
+            Metrics.gauge("db_pool_active_connections", "Connections checked out of the pool.",
+                    "", pool::getActiveConnections);
+            Metrics.gauge("db_pool_idle_connections", "Open connections waiting in the pool.",
+                    "", pool::getIdleConnections);
+            Metrics.gauge("db_pool_pending_threads", "Threads waiting for a connection.",
+                    "", pool::getThreadsAwaitingConnection);
+            Metrics.counter("db_pool_checkout_timeouts_total", "Checkouts that gave up waiting for a connection.",
+                    "", pool::getCheckoutTimeouts);
+            Metrics.counter("db_pool_statement_cache_hits_total", "Prepared statements reused from the cache.",
+                    "", pool::getStatementCacheHits);
+            Metrics.counter("db_pool_statement_cache_misses_total", "Prepared statements that had to be prepared.",
+                    "", pool::getStatementCacheMisses);
+        }
+        Metrics.counter("message_cache_hits_total", "Message lookups answered by the cache.",
+                "", () -> messageService.getCacheStats().hitCount());
+        Metrics.counter("message_cache_misses_total", "Message lookups that went to the database.",
+                "", () -> messageService.getCacheStats().missCount());
+        Metrics.counter("message_cache_evictions_total", "Messages evicted from the cache.",
+                "", () -> messageService.getCacheStats().evictionCount());
+        Metrics.counter("message_timeline_cache_hits_total", "Per-account message lists answered from a cached timeline.",
+                "", () -> messageService.getTimelineCacheStats().hitCount());
+        Metrics.counter("message_timeline_cache_misses_total", "Per-account message lists that loaded the timeline from the database.",
+                "", () -> messageService.getTimelineCacheStats().missCount());
+        Metrics.counter("message_timeline_cache_evictions_total", "Per-account timelines evicted from the cache.",
+                "", () -> messageService.getTimelineCacheStats().evictionCount());
+        Metrics.gauge("search_index_documents", "Messages held by the message search index.",
+                "", () -> messageService.getSearchIndex().getDocumentCount());
+        Metrics.gauge("search_index_terms", "Distinct terms in the message search index.",
+                "", () -> messageService.getSearchIndex().getTermCount());
+        Metrics.gauge("search_index_posting_bytes", "Bytes held by the message search index's posting lists.",
+                "", () -> messageService.getSearchIndex().getPostingBytes());
+        Metrics.counter("message_export_failures_total", "Message exports ended with an error record because the database read failed.",
+                "", exportFailures::sum);
+        Metrics.counter("list_response_cache_hits_total", "List responses sent from the encoded response cache.",
+                "", () -> listResponses.stats().hitCount());
+        Metrics.counter("list_response_cache_misses_total", "List responses that had to be read, serialized and encoded.",
+                "", () -> listResponses.stats().missCount());
+        Metrics.gauge("account_username_filter_fill_ratio", "Fraction of bits set in the username filter's newest stage.",
+                "", () -> accountService.getUsernameFilter().getFillRatio());
+        Metrics.gauge("account_username_filter_false_positive_rate", "Expected false-positive rate of the username filter.",
+                "", () -> accountService.getUsernameFilter().getExpectedFalsePositiveRate());
+    }
+
+    /**
+     * Checks the session token of a request that presents one, before any handler runs. The check is a
+     * signature and expiry comparison in memory, with no session store or account lookup. A valid token records
+     * its account on the context; an invalid or expired one is answered with a 401 status code. Requests
+     * without a token continue anonymously.
+     * @param context The Javalin context containing the HTTP request and response.
+     */
+    private void authenticate(Context context) {
+        String authorization = context.header(Header.AUTHORIZATION);
+        if(authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)){
+            return;
+        }
+        int account_id = sessionTokens.verify(authorization.substring(7).trim());
+        if(account_id < 0){
+            throw new UnauthorizedResponse();
+        }
+        context.attribute(ACCOUNT_ID_ATTRIBUTE, account_id);
+    }
+
+    /**
+     * @return the account the request's session token was issued to, or null if the request has no token.
+     */
+    private static Integer authenticatedAccount(Context context) {
+        return context.attribute(ACCOUNT_ID_ATTRIBUTE);
+    }
+
+    /**
+     * Handles a metrics scrape. Responds with every request, query, pool, cache and bulkhead metric in the
+     * Prometheus text format. Runs on the Jetty thread, since it never touches the database.
+     * @param context The Javalin context containing the HTTP request and response.
+     */
+    private void getMetricsHandler(Context context) {
+        context.contentType("text/plain; version=0.0.4; charset=utf-8");
+        context.result(Metrics.scrape());
+    }
+
     /**
      * Handles the registration of a new user. Reads the user details from the request body,
-     * registers the user, and responds with the registered user details or a 400 status code.
+     * registers the user, and responds with the registered user details or a 400 status code. A session token
+     * for the new account is returned in the X-Session-Token header.
      * @param context The Javalin context containing the HTTP request and response.
-     * @throws JsonProcessingException If there is an error processing JSON.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void postUserRegisterHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper(); 
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void postUserRegisterHandler(Context context) throws IOException {
+        Account account = JacksonJsonMapper.readJson(context, JacksonJsonMapper.ACCOUNT_READER);
         Account registeredAccount = accountService.registerUser(account);
         if(registeredAccount != null){
-            context.json(mapper.writeValueAsString(registeredAccount));
+            context.header(SESSION_TOKEN_HEADER, sessionTokens.issue(registeredAccount.account_id));
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.ACCOUNT_WRITER, registeredAccount);
         } else {
             context.status(400);
         }
@@ -62,16 +386,17 @@ public class SocialMediaController {
 
     /**
      * Handles user login. Reads the user credentials from the request body, verifies the user,
-     * and responds with the user details or a 401 status code if authentication fails.
+     * and responds with the user details or a 401 status code if authentication fails. A session token for the
+     * account is returned in the X-Session-Token header.
      * @param context The Javalin context containing the HTTP request and response.
-     * @throws JsonProcessingException If there is an error processing JSON.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void postUserLoginHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper(); 
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void postUserLoginHandler(Context context) throws IOException {
+        Account account = JacksonJsonMapper.readJson(context, JacksonJsonMapper.ACCOUNT_READER);
         Account verifiedAccount = accountService.verifyAccountDetails(account);
         if(verifiedAccount != null){
-            context.json(mapper.writeValueAsString(verifiedAccount));
+            context.header(SESSION_TOKEN_HEADER, sessionTokens.issue(verifiedAccount.account_id));
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.ACCOUNT_WRITER, verifiedAccount);
         } else {
             context.status(401);
         }
@@ -79,40 +404,237 @@ public class SocialMediaController {
 
     /**
      * Handles the creation of a new message. Reads the message details from the request body,
-     * creates the message, and responds with the created message or a 400 status code if creation fails.
+     * creates the message, and responds with the created message or a 400 status code if creation fails. The
+     * message is posted by the session token's account, whatever posted_by the body names; without a token the
+     * request is answered with a 401 status code unless -Dsession.required=false.
      * @param context The Javalin context containing the HTTP request and response.
-     * @throws JsonProcessingException If there is an error processing JSON.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void postMessageHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper(); 
-        Message message = mapper.readValue(context.body(), Message.class);
-        Message addedMessage = messageService.createMessage(message);
+    private void postMessageHandler(Context context) throws IOException {
+        Integer account_id = authenticatedAccount(context);
+        if(account_id == null && sessionRequired){
+            context.status(401);
+            return;
+        }
+        Message message = JacksonJsonMapper.readJson(context, JacksonJsonMapper.MESSAGE_READER);
+        Message addedMessage = account_id != null
+                ? messageService.createMessage(account_id, message)
+                : messageService.createMessage(message);
         if(addedMessage != null){
-            context.json(mapper.writeValueAsString(addedMessage));
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.MESSAGE_WRITER, addedMessage);
         } else {
             context.status(400);
         }
     }
 
     /**
-     * Handles the retrieval of all messages. Responds with a list of all messages.
+     * Handles the creation of many messages at once. The request body is a JSON array of messages, which is
+     * parsed as a stream and applied in chunks, each message validated with the same rules as a single post.
+     * Responds with a JSON array holding one result per message, in request order, written as each chunk is
+     * applied. Responds with a 400 status code if the body is not a JSON array. Every message is posted by the
+     * session token's account; without a token the request is answered with a 401 status code unless
+     * -Dsession.required=false.
      * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void getAllMessagesHandler(Context context){
-        context.json(messageService.getAllMessages());
+    private void postMessageBatchHandler(Context context) throws IOException {
+        Integer account_id = authenticatedAccount(context);
+        if(account_id == null && sessionRequired){
+            context.status(401);
+            return;
+        }
+        try (JsonParser parser = JacksonJsonMapper.getMapper().createParser(context.bodyInputStream())) {
+            if(parser.nextToken() != JsonToken.START_ARRAY){
+                context.status(400);
+                return;
+            }
+            context.contentType(ContentType.APPLICATION_JSON);
+            try (SequenceWriter out = JacksonJsonMapper.BATCH_RESULT_WRITER.writeValuesAsArray(context.outputStream())) {
+                List<Message> chunk = new ArrayList<>(MessageService.BATCH_CHUNK_SIZE);
+                int index = 0;
+                JsonToken token;
+                while((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null){
+                    if(token == JsonToken.START_OBJECT){
+                        chunk.add(JacksonJsonMapper.MESSAGE_READER.readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                        chunk.add(null);
+                    }
+                    if(chunk.size() == MessageService.BATCH_CHUNK_SIZE){
+                        index = writeBatchResults(out, index, createMessages(account_id, chunk), "invalid message");
+                        chunk.clear();
+                    }
+                }
+                writeBatchResults(out, index, createMessages(account_id, chunk), "invalid message");
+            }
+        }
+    }
+
+    /**
+     * Creates a chunk of messages, on behalf of the authenticated account if there is one.
+     */
+    private List<Message> createMessages(Integer account_id, List<Message> chunk){
+        return account_id != null ? messageService.createMessages(account_id, chunk) : messageService.createMessages(chunk);
+    }
+
+    /**
+     * Handles the deletion of many messages at once. The request body is a JSON array of message IDs, which is
+     * parsed as a stream and deleted in chunks. Responds with a JSON array holding one result per ID, in request
+     * order, with the deleted message where there was one. Responds with a 400 status code if the body is not
+     * a JSON array.
+     * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error processing JSON or writing the response.
+     */
+    private void deleteMessageBatchHandler(Context context) throws IOException {
+        try (JsonParser parser = JacksonJsonMapper.getMapper().createParser(context.bodyInputStream())) {
+            if(parser.nextToken() != JsonToken.START_ARRAY){
+                context.status(400);
+                return;
+            }
+            context.contentType(ContentType.APPLICATION_JSON);
+            try (SequenceWriter out = JacksonJsonMapper.BATCH_RESULT_WRITER.writeValuesAsArray(context.outputStream())) {
+                int[] chunk = new int[MessageService.BATCH_CHUNK_SIZE];
+                int size = 0;
+                int index = 0;
+                JsonToken token;
+                while((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null){
+                    if(token == JsonToken.VALUE_NUMBER_INT){
+                        chunk[size++] = parser.getIntValue();
+                    } else {
+                        parser.skipChildren();
+                        chunk[size++] = -1;
+                    }
+                    if(size == chunk.length){
+                        index = writeBatchResults(out, index, messageService.deleteMessages(chunk), "message not found");
+                        size = 0;
+                    }
+                }
+                writeBatchResults(out, index, messageService.deleteMessages(Arrays.copyOf(chunk, size)), "message not found");
+            }
+        }
+    }
+
+    /**
+     * Writes one result per item of a processed chunk.
+     * @return the index of the next item.
+     */
+    private static int writeBatchResults(SequenceWriter out, int index, List<Message> applied, String error) throws IOException {
+        for(Message message : applied){
+            out.write(new BatchResult(index++, message, error));
+        }
+        return index;
+    }
+
+    /**
+     * Handles the retrieval of all messages. Responds with a list of all messages, or with a single page of
+     * messages and a cursor for the next page if the request has a limit or cursor query parameter. A request
+     * with a from, to or since query parameter gets a page of the messages posted in that time window instead,
+     * ordered by time_posted_epoch; see timeWindowStart and timeWindowEnd. The
+     * response is tagged with the version of the message list, and a request whose If-None-Match names the
+     * current version is answered with a 304 status code without reading the database. The body is compressed
+     * and cached as described for writeList.
+     * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error writing the response.
+     */
+    private void getAllMessagesHandler(Context context) throws IOException {
+        writeList(context, messageService.getVersion(), () -> {
+            String cursor = context.queryParam("cursor");
+            int limit = pageLimit(context);
+            if(isTimeWindowRequest(context)){
+                long from = timeWindowStart(context);
+                long to = timeWindowEnd(context);
+                PageCursor.decodeTime(cursor);
+                return () -> JacksonJsonMapper.MESSAGE_PAGE_WRITER.writeValueAsBytes(
+                        messageService.getMessagesBetween(from, to, cursor, limit));
+            }
+            if(isPageRequest(context)){
+                PageCursor.decode(cursor);
+                return () -> JacksonJsonMapper.MESSAGE_PAGE_WRITER.writeValueAsBytes(
+                        messageService.getMessagePage(cursor, limit));
+            }
+            return () -> JacksonJsonMapper.MESSAGE_LIST_WRITER.writeValueAsBytes(messageService.getAllMessages());
+        });
+    }
+
+    /**
+     * Handles full-text search over message text. Responds with up to limit messages matching the q query
+     * parameter, best match first; see SearchIndex for the query syntax. A query with no terms or too many is
+     * answered with a 400 status code. Results are tagged and cached with the version of the list of all
+     * messages, which changes with every write that could change them.
+     * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error writing the response.
+     */
+    private void searchMessagesHandler(Context context) throws IOException {
+        writeList(context, messageService.getVersion(), () -> {
+            String query = context.queryParam("q");
+            int limit = pageLimit(context);
+            SearchIndex.checkQuery(query);
+            return () -> JacksonJsonMapper.MESSAGE_LIST_WRITER.writeValueAsBytes(messageService.searchMessages(query, limit));
+        });
+    }
+
+    /**
+     * Handles the export of the whole message table as newline-delimited JSON. Each row is written to the
+     * response as soon as it is read, so memory use does not depend on the size of the table. A blocked or
+     * disconnected client stalls or stops the underlying query. The status and earlier rows may already have
+     * been sent when reading the database fails, so that failure is counted and reported by ending the body with
+     * an error record, {"error":"..."}, rather than leaving a truncated export that looks complete. Rows are
+     * only read between records, so the error record always starts on a line of its own. A failure to write to
+     * the client is rethrown instead, so the connection is aborted rather than finished.
+     * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error writing the response.
+     */
+    private void exportMessagesHandler(Context context) throws IOException {
+        context.contentType("application/x-ndjson");
+        ObjectWriter writer = JacksonJsonMapper.MESSAGE_NDJSON_WRITER;
+        AtomicBoolean writeFailed = new AtomicBoolean();
+        try (JsonGenerator generator = writer.createGenerator(context.outputStream())) {
+            try {
+                messageService.exportMessages(message -> {
+                    try {
+                        writer.writeValue(generator, message);
+                        generator.writeRaw('\n');
+                    } catch(IOException e){
+                        writeFailed.set(true);
+                        throw e;
+                    }
+                });
+            } catch(IOException e){
+                if(writeFailed.get()){
+                    throw e;
+                }
+                exportFailures.increment();
+                generator.writeStartObject();
+                generator.writeStringField("error", "export failed");
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+        }
     }
 
     /**
      * Handles the retrieval of a specific message by its ID. Responds with the message details 
-     * or an empty file if the message is not found.
+     * or an empty file if the message is not found. The response is tagged from the message's fields, and a
+     * request whose If-None-Match names the current tag is answered with a 304 status code; a cached message
+     * is answered without reading the database. Javalin gzips the body whenever Accept-Encoding mentions gzip
+     * and the body is large enough, so such requests get a tag of their own and the response varies on
+     * Accept-Encoding.
      * @param context The Javalin context containing the HTTP request and response.
-     * @throws JsonProcessingException If there is an error processing JSON.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void getMessageByIdHandler(Context context) throws JsonProcessingException{
+    private void getMessageByIdHandler(Context context) throws IOException {
         int message_id = Integer.parseInt(context.pathParam("message_id"));
         Message message = messageService.getMessage(message_id);
         if(message != null){
-            context.json(message);
+            String acceptEncoding = context.header(Header.ACCEPT_ENCODING);
+            boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+            String etag = EntityTags.of(message, gzip ? "gzip" : null);
+            context.header(Header.VARY, Header.ACCEPT_ENCODING);
+            if(notModified(context, etag)){
+                return;
+            }
+            context.header(Header.ETAG, etag);
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.MESSAGE_WRITER, message);
         }
     }
 
@@ -120,12 +642,13 @@ public class SocialMediaController {
      * Handles the deletion of a message by its ID. Responds with the deleted message or 
      * an empty file if the message is not found.
      * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error writing the response.
      */
-    private void deleteMessageHandler(Context context){
+    private void deleteMessageHandler(Context context) throws IOException {
         int message_id = Integer.parseInt(context.pathParam("message_id"));
         Message deletedMessage = messageService.deleteMessage(message_id);
         if(deletedMessage != null){
-            context.json(deletedMessage);
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.MESSAGE_WRITER, deletedMessage);
         }
     }
 
@@ -133,15 +656,14 @@ public class SocialMediaController {
      * Handles the update of a message by its ID. Reads the updated message details from the request body,
      * updates the message, and responds with the updated message or a 400 status code if the update fails.
      * @param context The Javalin context containing the HTTP request and response.
-     * @throws JsonProcessingException If there is an error processing JSON.
+     * @throws IOException If there is an error processing JSON or writing the response.
      */
-    private void patchMessageHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper(); 
-        Message message = mapper.readValue(context.body(), Message.class);
+    private void patchMessageHandler(Context context) throws IOException {
+        Message message = JacksonJsonMapper.readJson(context, JacksonJsonMapper.MESSAGE_READER);
         int message_id = Integer.parseInt(context.pathParam("message_id"));
         Message updatedMessage = messageService.updateMessage(message_id, message);
         if(updatedMessage != null){
-            context.json(updatedMessage);
+            JacksonJsonMapper.writeJson(context, JacksonJsonMapper.MESSAGE_WRITER, updatedMessage);
         } else {
             context.status(400);
         }
@@ -149,11 +671,158 @@ public class SocialMediaController {
 
     /**
      * Handles the retrieval of all messages posted by a specific user. Responds with a list of messages for 
-     * the specified account ID.
+     * the specified account ID, or with a single page of them if the request has a limit or cursor query parameter.
+     * The from, to and since query parameters select a time window as for the list of all messages.
+     * Conditional requests, compression and caching are handled as for the list of all messages, with the
+     * account's own version.
      * @param context The Javalin context containing the HTTP request and response.
+     * @throws IOException If there is an error writing the response.
      */
-    private void getAllMessagesByUserHandler(Context context){
+    private void getAllMessagesByUserHandler(Context context) throws IOException {
         int account_id = Integer.parseInt(context.pathParam("account_id"));
-        context.json(messageService.getAllMessages(account_id));
+        writeList(context, messageService.getVersion(account_id), () -> {
+            String cursor = context.queryParam("cursor");
+            int limit = pageLimit(context);
+            if(isTimeWindowRequest(context)){
+                long from = timeWindowStart(context);
+                long to = timeWindowEnd(context);
+                PageCursor.decodeTime(cursor);
+                return () -> JacksonJsonMapper.MESSAGE_PAGE_WRITER.writeValueAsBytes(
+                        messageService.getMessagesBetween(account_id, from, to, cursor, limit));
+            }
+            if(isPageRequest(context)){
+                PageCursor.decode(cursor);
+                return () -> JacksonJsonMapper.MESSAGE_PAGE_WRITER.writeValueAsBytes(
+                        messageService.getMessagePage(account_id, cursor, limit));
+            }
+            return () -> JacksonJsonMapper.MESSAGE_LIST_WRITER.writeValueAsBytes(messageService.getAllMessages(account_id));
+        });
+    }
+
+    /**
+     * Reads and serializes a list response body.
+     */
+    private interface ListBody {
+        byte[] serialize() throws IOException;
+    }
+
+    /**
+     * Parses and checks a list request's query parameters, and returns the ListBody that answers it. Cursors
+     * are decoded here only to check them; the service decodes them again.
+     */
+    private interface ListRequest {
+        /**
+         * @throws IllegalArgumentException If a parameter is malformed.
+         */
+        ListBody parse();
+    }
+
+    /**
+     * Writes a list response in the content coding negotiated from Accept-Encoding. The encoded body is cached
+     * under the coding, the list's version and the request URI, so until the list changes every later request
+     * for it is answered from memory without reading, serializing or compressing anything. Each coding has its
+     * own entity tag, since the encoded bytes differ, and a request already holding the current one gets a 304
+     * status code. The query parameters are checked first, so a malformed request gets a 400 status code even
+     * when its If-None-Match names the current tag.
+     * @param context The Javalin context containing the HTTP request and response.
+     * @param version The version of the list, read before the list itself.
+     * @param request Checks the query parameters and gives what reads and serializes the list when it is not
+     * cached.
+     * @throws IOException If there is an error serializing or writing the response.
+     */
+    private void writeList(Context context, String version, ListRequest request) throws IOException {
+        ListBody body;
+        try {
+            body = request.parse();
+        } catch(IllegalArgumentException e){
+            context.status(400);
+            return;
+        }
+        String coding = ResponseCompression.negotiate(context.header(Header.ACCEPT_ENCODING));
+        String etag = EntityTags.of(coding == null ? version : version + "-" + coding);
+        context.header(Header.VARY, Header.ACCEPT_ENCODING);
+        if(notModified(context, etag)){
+            return;
+        }
+        String key = coding + " " + version + " " + context.path() + "?" + context.queryString();
+        // read outside the cache's locks; two misses for the same key both build it, and either result is right
+        ResponseCompression.Body response = listResponses.getIfPresent(key);
+        if(response == null){
+            response = ResponseCompression.encode(body.serialize(), coding);
+            listResponses.put(key, response);
+        }
+        context.header(Header.ETAG, etag);
+        context.contentType(ContentType.APPLICATION_JSON);
+        if(response.getCoding() != null){
+            context.header(Header.CONTENT_ENCODING, response.getCoding());
+        }
+        // written past Javalin's output stream, which would compress the body a second time
+        context.res().setContentLength(response.getBytes().length);
+        context.res().getOutputStream().write(response.getBytes());
+    }
+
+    /**
+     * Answers a conditional request with a 304 status code and no body if its If-None-Match names the current
+     * entity tag of the resource.
+     * @return true if the request was answered and the handler should stop.
+     */
+    private static boolean notModified(Context context, String etag){
+        if(!EntityTags.matches(context.header(Header.IF_NONE_MATCH), etag)){
+            return false;
+        }
+        context.header(Header.ETAG, etag);
+        context.status(304);
+        return true;
+    }
+
+    /**
+     * A list request selects a time window when it has a from, to or since query parameter. The window is
+     * answered as pages ordered by time_posted_epoch, and takes precedence over isPageRequest.
+     */
+    private static boolean isTimeWindowRequest(Context context){
+        return context.queryParam("from") != null || context.queryParam("to") != null || context.queryParam("since") != null;
+    }
+
+    /**
+     * @return the earliest time_posted_epoch in the requested window: the from query parameter, which is
+     * inclusive, or the time just after the since query parameter, which is exclusive, whichever is later.
+     * @throws IllegalArgumentException If either is not a number.
+     */
+    private static long timeWindowStart(Context context){
+        String from = context.queryParam("from");
+        String since = context.queryParam("since");
+        long start = from == null ? Long.MIN_VALUE : Long.parseLong(from);
+        if(since != null){
+            long after = Long.parseLong(since);
+            start = after == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(start, after + 1);
+        }
+        return start;
+    }
+
+    /**
+     * @return the time_posted_epoch the requested window stops before: the to query parameter, which is
+     * exclusive, or no limit.
+     * @throws IllegalArgumentException If it is not a number.
+     */
+    private static long timeWindowEnd(Context context){
+        String to = context.queryParam("to");
+        return to == null ? Long.MAX_VALUE : Long.parseLong(to);
+    }
+
+    /**
+     * A list request is paginated when it names a page size or continues from a cursor. Requests without
+     * either keep receiving the full list, as before.
+     */
+    private static boolean isPageRequest(Context context){
+        return context.queryParam("limit") != null || context.queryParam("cursor") != null;
+    }
+
+    /**
+     * @return the requested page size, or 0 to use the default.
+     * @throws IllegalArgumentException If the limit is not a number.
+     */
+    private static int pageLimit(Context context){
+        String limit = context.queryParam("limit");
+        return limit == null ? 0 : Integer.parseInt(limit);
     }
 }
@@ -1,59 +1,115 @@
 package DAO;
 
 import java.sql.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 /**
  * Data Access Object (DAO) for managing user accounts in the database.
  */
 public class AccountDao {
+    /**
+     * SQLSTATE reported when an insert violates a unique constraint.
+     */
+    private static final String UNIQUE_VIOLATION = "23505";
 
     /**
-     * Verifies the account details by checking the provided username and password.
-     * @param account The Account object containing the username and password to verify.
-     * @return The Account object if the credentials are valid, or null if they are invalid.
+     * Call counts, latencies and failures of each method, reported at /metrics. The in-memory DAO records
+     * into the same timers, so the metrics do not depend on the storage engine.
      */
-    public Account verifyAccountDetails(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "select * from account where username = ? and password = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, account.username);
-            ps.setString(2, account.password);
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                return new Account(rs.getInt("account_id"),
-                                   rs.getString("username"), 
-                                   rs.getString("password"));
+    static final Metrics.Timer GET_ACCOUNT = Metrics.query("AccountDao", "getAccount");
+    static final Metrics.Timer UPDATE_PASSWORD = Metrics.query("AccountDao", "updatePassword");
+    static final Metrics.Timer REGISTER_USER = Metrics.query("AccountDao", "registerUser");
+    static final Metrics.Timer IS_USER_BY_USERNAME = Metrics.query("AccountDao", "isUserByUsername");
+    static final Metrics.Timer IS_USER_BY_ID = Metrics.query("AccountDao", "isUserById");
+    static final Metrics.Timer LOAD_ACCOUNT_IDS = Metrics.query("AccountDao", "loadAccountIds");
+    static final Metrics.Timer LOAD_USERNAMES = Metrics.query("AccountDao", "loadUsernames");
+    static final Metrics.Timer LOAD_ACCOUNTS = Metrics.query("AccountDao", "loadAccounts");
+    static final Metrics.Timer LOAD_PLAINTEXT_ACCOUNTS = Metrics.query("AccountDao", "loadPlaintextAccounts");
+
+    /**
+     * Retrieves an account by its username, using the unique index on account.username.
+     * @param username The username to look up.
+     * @return The Account object with its stored password or password hash, or null if not found.
+     */
+    public Account getAccount(String username) {
+        long start = System.nanoTime();
+        String sql = "select account_id, username, password from account where username = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    return new Account(rs.getInt(1), rs.getString(2), rs.getString(3));
+                }
             }
         }catch(SQLException e){
+            GET_ACCOUNT.error();
             System.out.println(e.getMessage());
+        } finally {
+            GET_ACCOUNT.recordSince(start);
         }
         return null;
     }
 
     /**
-     * Registers a new user account in the database.
+     * Replaces an account's stored password, but only if it still holds the expected value, so two requests
+     * upgrading the same row cannot overwrite a password changed in between.
+     * @param account_id The ID of the account to update.
+     * @param expected The stored value the caller read.
+     * @param password The new value to store.
+     * @return true if the row was updated.
+     */
+    public boolean updatePassword(int account_id, String expected, String password) {
+        long start = System.nanoTime();
+        String sql = "update account set password = ? where account_id = ? and password = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, password);
+            ps.setInt(2, account_id);
+            ps.setString(3, expected);
+            return ps.executeUpdate() == 1;
+        }catch(SQLException e){
+            UPDATE_PASSWORD.error();
+            System.out.println(e.getMessage());
+        } finally {
+            UPDATE_PASSWORD.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Registers a new user account in the database. A username that is already taken is rejected by the unique
+     * constraint on account.username, so no separate existence check is needed.
      * @param account The Account object containing the username and password to register.
-     * @return The newly created Account object with the generated ID, or null if the registration failed.
+     * @return The newly created Account object with the generated ID, or null if the username is taken or the
+     * registration failed.
      */
     public Account registerUser(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "insert into account (username, password) values (?, ?)";
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        long start = System.nanoTime();
+        String sql = "insert into account (username, password) values (?, ?)";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, account.username);
             ps.setString(2, account.password);
             ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if(rs.next()){
-                int accId = (int) rs.getLong(1);
-                return new Account(accId, account.username, account.password);
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if(rs.next()){
+                    int accId = (int) rs.getLong(1);
+                    return new Account(accId, account.username, account.password);
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            if(!UNIQUE_VIOLATION.equals(e.getSQLState())){
+                REGISTER_USER.error();
+                System.out.println(e.getMessage());
+            }
+        } finally {
+            REGISTER_USER.recordSince(start);
         }
         return null;
     }
@@ -64,15 +120,19 @@ public class AccountDao {
      * @return true if the user exists, false otherwise.
      */
     public boolean isUser(String username) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "select * from account where username = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        long start = System.nanoTime();
+        String sql = "select * from account where username = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            return rs.next();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         }catch(SQLException e){
+            IS_USER_BY_USERNAME.error();
             System.out.println(e.getMessage());
+        } finally {
+            IS_USER_BY_USERNAME.recordSince(start);
         }
         return false;
     }
@@ -83,16 +143,107 @@ public class AccountDao {
      * @return true if the user exists, false otherwise.
      */
     public boolean isUser(int posted_by) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "select * from account where account_id = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        long start = System.nanoTime();
+        String sql = "select * from account where account_id = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, posted_by);
-            ResultSet rs = ps.executeQuery();
-            return rs.next();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         }catch(SQLException e){
+            IS_USER_BY_ID.error();
             System.out.println(e.getMessage());
+        } finally {
+            IS_USER_BY_ID.recordSince(start);
         }
         return false;
     }
+
+    /**
+     * Passes the ID of every account in the database to the given consumer, without building a list.
+     * @param consumer The consumer that receives each account ID.
+     */
+    public void loadAccountIds(IntConsumer consumer) {
+        long start = System.nanoTime();
+        String sql = "select account_id from account";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while(rs.next()){
+                consumer.accept(rs.getInt(1));
+            }
+        }catch(SQLException e){
+            LOAD_ACCOUNT_IDS.error();
+            System.out.println(e.getMessage());
+        } finally {
+            LOAD_ACCOUNT_IDS.recordSince(start);
+        }
+    }
+
+    /**
+     * Passes the username of every account in the database to the given consumer, without building a list.
+     * @param consumer The consumer that receives each username.
+     */
+    public void loadUsernames(Consumer<String> consumer) {
+        long start = System.nanoTime();
+        String sql = "select username from account";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while(rs.next()){
+                consumer.accept(rs.getString(1));
+            }
+        }catch(SQLException e){
+            LOAD_USERNAMES.error();
+            System.out.println(e.getMessage());
+        } finally {
+            LOAD_USERNAMES.recordSince(start);
+        }
+    }
+
+    /**
+     * Passes every account in the database, with its stored password, to the given consumer.
+     * @param consumer The consumer that receives each account.
+     */
+    public void loadAccounts(Consumer<Account> consumer) {
+        long start = System.nanoTime();
+        String sql = "select account_id, username, password from account";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while(rs.next()){
+                consumer.accept(new Account(rs.getInt(1), rs.getString(2), rs.getString(3)));
+            }
+        }catch(SQLException e){
+            LOAD_ACCOUNTS.error();
+            System.out.println(e.getMessage());
+        } finally {
+            LOAD_ACCOUNTS.recordSince(start);
+        }
+    }
+
+    /**
+     * Passes every account whose password is not stored as a hash to the given consumer.
+     * @param hashPrefix The prefix every hashed password starts with.
+     * @param consumer The consumer that receives each account with its plaintext password.
+     */
+    public void loadPlaintextAccounts(String hashPrefix, Consumer<Account> consumer) {
+        long start = System.nanoTime();
+        String sql = "select account_id, username, password from account where password not like ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, hashPrefix.replace("%", "\\%").replace("_", "\\_") + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    consumer.accept(new Account(rs.getInt(1), rs.getString(2), rs.getString(3)));
+                }
+            }
+        }catch(SQLException e){
+            LOAD_PLAINTEXT_ACCOUNTS.error();
+            System.out.println(e.getMessage());
+        } finally {
+            LOAD_PLAINTEXT_ACCOUNTS.recordSince(start);
+        }
+    }
 }
\ No newline at end of file
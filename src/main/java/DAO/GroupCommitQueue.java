@@ -0,0 +1,140 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import Model.Message;
+
+/**
+ * Coalesces concurrent message inserts into shared transactions. Callers enqueue a message and block; a single
+ * flusher thread collects everything queued, waiting at most maxDelayMicros after the first arrival or until
+ * maxBatchSize messages are waiting, and writes the lot with one JDBC batch and one commit. Each caller is
+ * then handed its own row with the generated ID.
+ *
+ * Under light load a batch holds one message and only the short deadline is added to its latency; under heavy
+ * load many inserts share each commit, so throughput grows with concurrency instead of being capped by the
+ * cost of a commit.
+ *
+ * Anything thrown while a batch is written, including an Error, fails that batch's callers and is counted as
+ * an error of MessageDao's addMessages; the flusher itself keeps running for the batches after it.
+ */
+public class GroupCommitQueue {
+
+    private final MessageDao messageDao;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Creates the queue and starts its flusher thread.
+     * @param messageDao The DAO whose batch insert is used to flush.
+     * @param maxBatchSize The most messages written in one transaction.
+     * @param maxDelayMicros How long the flusher waits for more messages after the first one arrives.
+     */
+    public GroupCommitQueue(MessageDao messageDao, int maxBatchSize, long maxDelayMicros) {
+        this.messageDao = messageDao;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        Thread flusher = new Thread(this::run, "message-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues a message for insertion and waits for the batch containing it to commit.
+     * @param message The message to insert.
+     * @return The created Message with its generated ID, or null if the insert failed.
+     */
+    public Message add(Message message) {
+        PendingInsert pending = new PendingInsert(message);
+        queue.add(pending);
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be flushed.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        List<Message> messages = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch, messages);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                flush(batch, messages);
+            } catch (Throwable e) {
+                fail(batch, e);
+            } finally {
+                batch.clear();
+                messages.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingInsert> batch, List<Message> messages) {
+        for (PendingInsert pending : batch) {
+            messages.add(pending.message);
+        }
+        try {
+            List<Message> added = messageDao.addMessages(messages);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(added.get(i));
+            }
+        } catch (Throwable e) {
+            fail(batch, e);
+        }
+    }
+
+    private void fail(List<PendingInsert> batch, Throwable e) {
+        MessageDao.ADD_MESSAGES.error();
+        for (PendingInsert pending : batch) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A queued insert and the future its caller is waiting on.
+     */
+    private static class PendingInsert {
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import Model.Account;
+
+/**
+ * AccountDao backed by the in-memory store instead of H2. Each method is timed under the same name as its H2
+ * counterpart.
+ */
+public class MemoryAccountDao extends AccountDao {
+    private final MemoryStore store;
+
+    /**
+     * @param store The store holding the accounts.
+     */
+    public MemoryAccountDao(MemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Account getAccount(String username) {
+        long start = System.nanoTime();
+        try {
+            return store.getAccount(username);
+        } finally {
+            GET_ACCOUNT.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean updatePassword(int account_id, String expected, String password) {
+        long start = System.nanoTime();
+        try {
+            return store.updatePassword(account_id, expected, password);
+        }catch(IOException e){
+            UPDATE_PASSWORD.error();
+            System.out.println(e.getMessage());
+        } finally {
+            UPDATE_PASSWORD.recordSince(start);
+        }
+        return false;
+    }
+
+    @Override
+    public Account registerUser(Account account) {
+        long start = System.nanoTime();
+        try {
+            return store.registerUser(account.username, account.password);
+        }catch(IOException e){
+            REGISTER_USER.error();
+            System.out.println(e.getMessage());
+        } finally {
+            REGISTER_USER.recordSince(start);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isUser(String username) {
+        long start = System.nanoTime();
+        try {
+            return store.isUser(username);
+        } finally {
+            IS_USER_BY_USERNAME.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean isUser(int posted_by) {
+        long start = System.nanoTime();
+        try {
+            return store.isUser(posted_by);
+        } finally {
+            IS_USER_BY_ID.recordSince(start);
+        }
+    }
+
+    @Override
+    public void loadAccountIds(IntConsumer consumer) {
+        long start = System.nanoTime();
+        try {
+            store.forEachAccountId(consumer);
+        } finally {
+            LOAD_ACCOUNT_IDS.recordSince(start);
+        }
+    }
+
+    @Override
+    public void loadUsernames(Consumer<String> consumer) {
+        long start = System.nanoTime();
+        try {
+            store.forEachAccount(account -> consumer.accept(account.username));
+        } finally {
+            LOAD_USERNAMES.recordSince(start);
+        }
+    }
+
+    @Override
+    public void loadAccounts(Consumer<Account> consumer) {
+        long start = System.nanoTime();
+        try {
+            store.forEachAccount(consumer);
+        } finally {
+            LOAD_ACCOUNTS.recordSince(start);
+        }
+    }
+
+    @Override
+    public void loadPlaintextAccounts(String hashPrefix, Consumer<Account> consumer) {
+        long start = System.nanoTime();
+        try {
+            store.forEachAccount(account -> {
+                if(account.password != null && !account.password.startsWith(hashPrefix)){
+                    consumer.accept(account);
+                }
+            });
+        } finally {
+            LOAD_PLAINTEXT_ACCOUNTS.recordSince(start);
+        }
+    }
+}
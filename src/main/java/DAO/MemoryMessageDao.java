@@ -0,0 +1,196 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * MessageDao backed by the in-memory store instead of H2. Each method is timed under the same name as its H2
+ * counterpart. Messages returned by the read methods are shared with the store and must not be modified.
+ */
+public class MemoryMessageDao extends MessageDao {
+    private final MemoryStore store;
+
+    /**
+     * @param store The store holding the messages.
+     */
+    public MemoryMessageDao(MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Adds a new message. Group commit does not apply: the store already writes the log sequentially.
+     */
+    @Override
+    public Message addMessage(Message message) {
+        long start = System.nanoTime();
+        try {
+            return store.addMessage(message);
+        }catch(IOException e){
+            ADD_MESSAGE.error();
+            System.out.println(e.getMessage());
+        } finally {
+            ADD_MESSAGE.recordSince(start);
+        }
+        return null;
+    }
+
+    @Override
+    public List<Message> addMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        try {
+            return store.addMessages(messages);
+        }catch(IOException e){
+            ADD_MESSAGES.error();
+            System.out.println(e.getMessage());
+        } finally {
+            ADD_MESSAGES.recordSince(start);
+        }
+        List<Message> failed = new ArrayList<>(messages.size());
+        for(int i = 0; i < messages.size(); i++){
+            failed.add(null);
+        }
+        return failed;
+    }
+
+    @Override
+    public Message getMessage(int id) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessage(id);
+        } finally {
+            GET_MESSAGE.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesAfter(0, Integer.MAX_VALUE);
+        } finally {
+            GET_ALL_MESSAGES.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages(int account_id) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesAfter(account_id, 0, Integer.MAX_VALUE);
+        } finally {
+            GET_ALL_MESSAGES_BY_ACCOUNT.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int after_id, int limit) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesAfter(after_id, limit);
+        } finally {
+            GET_MESSAGES_AFTER.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int account_id, int after_id, int limit) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesAfter(account_id, after_id, limit);
+        } finally {
+            GET_MESSAGES_AFTER_BY_ACCOUNT.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesBetween(long from, long to, long after_time, int after_id, int limit) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesBetween(from, to, after_time, after_id, limit);
+        } finally {
+            GET_MESSAGES_BETWEEN.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesBetween(int account_id, long from, long to, long after_time, int after_id, int limit) {
+        long start = System.nanoTime();
+        try {
+            return store.getMessagesBetween(account_id, from, to, after_time, after_id, limit);
+        } finally {
+            GET_MESSAGES_BETWEEN_BY_ACCOUNT.recordSince(start);
+        }
+    }
+
+    /**
+     * Streams every message in message_id order, copying each into one reused row as the H2 export does.
+     */
+    @Override
+    public void exportMessages(MessageHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Message row = new Message();
+            int after = 0;
+            List<Message> page;
+            do {
+                page = store.getMessagesAfter(after, EXPORT_FETCH_SIZE);
+                for(Message message : page){
+                    row.message_id = message.message_id;
+                    row.posted_by = message.posted_by;
+                    row.message_text = message.message_text;
+                    row.time_posted_epoch = message.time_posted_epoch;
+                    handler.accept(row);
+                    after = message.message_id;
+                }
+            } while(page.size() == EXPORT_FETCH_SIZE);
+        } finally {
+            EXPORT_MESSAGES.recordSince(start);
+        }
+    }
+
+    @Override
+    public Message removeMessage(int message_id) {
+        long start = System.nanoTime();
+        try {
+            List<Message> removed = store.removeMessages(message_id);
+            return removed.isEmpty() ? null : removed.get(0);
+        }catch(IOException e){
+            REMOVE_MESSAGE.error();
+            System.out.println(e.getMessage());
+        } finally {
+            REMOVE_MESSAGE.recordSince(start);
+        }
+        return null;
+    }
+
+    @Override
+    public List<Message> removeMessages(int[] message_ids) {
+        long start = System.nanoTime();
+        try {
+            return store.removeMessages(message_ids);
+        }catch(IOException e){
+            REMOVE_MESSAGES.error();
+            System.out.println(e.getMessage());
+        } finally {
+            REMOVE_MESSAGES.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public Message updateMessage(int message_id, Message message) {
+        long start = System.nanoTime();
+        try {
+            return store.updateMessage(message_id, message.message_text);
+        }catch(IOException e){
+            UPDATE_MESSAGE.error();
+            System.out.println(e.getMessage());
+        } finally {
+            UPDATE_MESSAGE.recordSince(start);
+        }
+        return null;
+    }
+}
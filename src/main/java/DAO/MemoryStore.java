@@ -0,0 +1,829 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import Model.Account;
+import Model.Message;
+import Util.IntTable;
+
+/**
+ * Keeps every account and message in memory, as an alternative to H2 for data that fits in RAM. Rows are held
+ * in tables keyed directly by their int IDs, with an index of accounts by username, per account, the IDs
+ * of its messages in ascending order, and two sorted indexes on time_posted_epoch, one across all accounts and
+ * one per account, mirroring H2's. Reads never lock and never copy a row; the rows handed out are shared
+ * and must not be modified.
+ *
+ * Writes are serialized. Each one is appended to the current write-ahead log segment before it is applied, and
+ * a periodic snapshot writes the whole state to disk and starts a new segment, after which the older snapshot
+ * and segments are deleted. On startup the latest snapshot is loaded and the segments written after it are
+ * replayed. A store that finds neither starts empty and never opens H2; an existing H2 database is brought
+ * over once, before the first start, with importFrom() (see MemoryStoreImport).
+ *
+ * Like H2's tables, the store enforces that usernames are unique, that a message's author exists and that no
+ * text is longer than its column, and never reuses a generated ID.
+ */
+public class MemoryStore implements Closeable {
+
+    private static final byte ACCOUNT_INSERT = 1;
+    private static final byte PASSWORD_UPDATE = 2;
+    private static final byte MESSAGE_INSERT = 3;
+    private static final byte MESSAGE_UPDATE = 4;
+    private static final byte MESSAGE_DELETE = 5;
+
+    /**
+     * Longest username, password or message text the schema's varchar(255) columns accept.
+     */
+    private static final int MAX_LENGTH = 255;
+
+    private static final int SNAPSHOT_MAGIC = 0x4d454d53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern SEGMENT_FILE = Pattern.compile("wal-(\\d+)\\.log");
+
+    private final Path directory;
+    private final WriteAheadLog.SyncPolicy syncPolicy;
+    private final long snapshotIntervalMillis;
+    private final long snapshotWalBytes;
+
+    private final IntTable<Account> accounts = new IntTable<>();
+    private final ConcurrentHashMap<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+    private final IntTable<Message> messages = new IntTable<>();
+    private final IntTable<Timeline> timelines = new IntTable<>();
+    private final ConcurrentSkipListSet<TimeKey> byTime = new ConcurrentSkipListSet<>(TimeKey.BY_TIME);
+    private final ConcurrentSkipListSet<TimeKey> byAccountTime = new ConcurrentSkipListSet<>(TimeKey.BY_ACCOUNT_TIME);
+
+    /**
+     * Guarded by this, like everything that changes the state.
+     */
+    private int nextAccountId = 1;
+    private int nextMessageId = 1;
+    private WriteAheadLog wal;
+    private long segment;
+    private long lastSnapshotMillis = System.currentTimeMillis();
+
+    /**
+     * Held while a snapshot is written, so only one is written at a time. Taken before the store's own lock.
+     */
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService maintenance;
+    private final AtomicLong syncFailures = new AtomicLong();
+    private final AtomicLong snapshotFailures = new AtomicLong();
+
+    /**
+     * The IDs of one account's messages in ascending order, as a prefix of a shared array. Appends write past
+     * size and publish a new Timeline, so a reader holding an older one never sees a partial change. IDs of
+     * deleted messages stay until more than half of them are deleted, and are skipped on read.
+     */
+    private static final class Timeline {
+        final int[] ids;
+        final int size;
+        final int live;
+
+        Timeline(int[] ids, int size, int live) {
+            this.ids = ids;
+            this.size = size;
+            this.live = live;
+        }
+    }
+
+    /**
+     * Where a message sits in the time indexes. Updates do not change any of its fields, so a key lives as long
+     * as its message.
+     */
+    private static final class TimeKey {
+        static final Comparator<TimeKey> BY_TIME = Comparator.comparingLong((TimeKey key) -> key.time_posted_epoch)
+                .thenComparingInt(key -> key.message_id);
+        static final Comparator<TimeKey> BY_ACCOUNT_TIME = Comparator.comparingInt((TimeKey key) -> key.posted_by)
+                .thenComparing(BY_TIME);
+
+        final int posted_by;
+        final long time_posted_epoch;
+        final int message_id;
+
+        TimeKey(int posted_by, long time_posted_epoch, int message_id) {
+            this.posted_by = posted_by;
+            this.time_posted_epoch = time_posted_epoch;
+            this.message_id = message_id;
+        }
+
+        static TimeKey of(Message message) {
+            return new TimeKey(message.posted_by, message.time_posted_epoch, message.message_id);
+        }
+    }
+
+    /**
+     * Opens the store, recovering its state from the directory, and starts the background sync and snapshot
+     * tasks.
+     * @param directory The directory holding the snapshots and log segments.
+     * @param syncPolicy When log records are forced to disk.
+     * @param syncIntervalMillis How often the log is forced under the INTERVAL policy.
+     * @param snapshotIntervalMillis How long after the last snapshot a new one is taken, if anything changed.
+     * @param snapshotWalBytes Log segment size that triggers a snapshot before the interval is up.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public MemoryStore(Path directory, WriteAheadLog.SyncPolicy syncPolicy, long syncIntervalMillis,
+                       long snapshotIntervalMillis, long snapshotWalBytes) throws IOException {
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.snapshotWalBytes = snapshotWalBytes;
+        recover();
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(syncPolicy == WriteAheadLog.SyncPolicy.INTERVAL){
+            maintenance.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        maintenance.scheduleWithFixedDelay(this::maybeSnapshot, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the account with the given username, or null.
+     */
+    public Account getAccount(String username) {
+        return username == null ? null : accountsByUsername.get(username);
+    }
+
+    /**
+     * @return true if an account has the given username.
+     */
+    public boolean isUser(String username) {
+        return getAccount(username) != null;
+    }
+
+    /**
+     * @return true if an account has the given ID.
+     */
+    public boolean isUser(int account_id) {
+        return accounts.get(account_id) != null;
+    }
+
+    /**
+     * Passes every account to the consumer, in account_id order.
+     */
+    public void forEachAccount(Consumer<Account> consumer) {
+        int limit = accounts.limit();
+        for(int id = 0; id < limit; id++){
+            Account account = accounts.get(id);
+            if(account != null){
+                consumer.accept(account);
+            }
+        }
+    }
+
+    /**
+     * Passes every account ID to the consumer, in ascending order.
+     */
+    public void forEachAccountId(IntConsumer consumer) {
+        forEachAccount(account -> consumer.accept(account.account_id));
+    }
+
+    /**
+     * Creates an account with the next account ID.
+     * @return the new account, or null if the username is taken or a value is too long.
+     * @throws IOException If the change cannot be logged, in which case it is not made.
+     */
+    public synchronized Account registerUser(String username, String password) throws IOException {
+        if(username == null || tooLong(username) || tooLong(password) || accountsByUsername.containsKey(username)){
+            return null;
+        }
+        Account account = new Account(nextAccountId, username, password);
+        DataOutputStream out = wal.begin(ACCOUNT_INSERT);
+        out.writeInt(account.account_id);
+        writeString(out, account.username);
+        writeString(out, account.password);
+        wal.end();
+        wal.commit();
+        putAccount(account);
+        return account;
+    }
+
+    /**
+     * Replaces an account's password if it still holds the expected value.
+     * @return true if the password was replaced.
+     * @throws IOException If the change cannot be logged, in which case it is not made.
+     */
+    public synchronized boolean updatePassword(int account_id, String expected, String password) throws IOException {
+        Account account = accounts.get(account_id);
+        if(account == null || tooLong(password) || account.password == null || !account.password.equals(expected)){
+            return false;
+        }
+        DataOutputStream out = wal.begin(PASSWORD_UPDATE);
+        out.writeInt(account_id);
+        writeString(out, password);
+        wal.end();
+        wal.commit();
+        putAccount(new Account(account_id, account.username, password));
+        return true;
+    }
+
+    /**
+     * @return the message with the given ID, or null.
+     */
+    public Message getMessage(int message_id) {
+        return messages.get(message_id);
+    }
+
+    /**
+     * @return up to limit messages with an ID above after_id, in message_id order.
+     */
+    public List<Message> getMessagesAfter(int after_id, int limit) {
+        List<Message> page = new ArrayList<>(Math.min(limit, 1024));
+        int end = messages.limit();
+        for(int id = Math.max(after_id + 1, 0); id < end && page.size() < limit; id++){
+            Message message = messages.get(id);
+            if(message != null){
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return up to limit messages posted by the account with an ID above after_id, in message_id order. The
+     * account's timeline is searched for the starting point, so the cost does not depend on how many messages
+     * the account posted before it.
+     */
+    public List<Message> getMessagesAfter(int account_id, int after_id, int limit) {
+        Timeline timeline = account_id < 0 ? null : timelines.get(account_id);
+        if(timeline == null){
+            return new ArrayList<>();
+        }
+        List<Message> page = new ArrayList<>(Math.min(limit, timeline.live));
+        int from = Arrays.binarySearch(timeline.ids, 0, timeline.size, after_id);
+        from = from < 0 ? -from - 1 : from + 1;
+        for(int i = from; i < timeline.size && page.size() < limit; i++){
+            Message message = messages.get(timeline.ids[i]);
+            if(message != null){
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return up to limit messages with from <= time_posted_epoch < to, ordered by time_posted_epoch and then
+     * message_id, starting after the position (after_time, after_id).
+     */
+    public List<Message> getMessagesBetween(long from, long to, long after_time, int after_id, int limit) {
+        return between(byTime, 0, false, from, to, after_time, after_id, limit);
+    }
+
+    /**
+     * @return up to limit messages posted by the account with from <= time_posted_epoch < to, ordered by
+     * time_posted_epoch and then message_id, starting after the position (after_time, after_id).
+     */
+    public List<Message> getMessagesBetween(int account_id, long from, long to, long after_time, int after_id, int limit) {
+        return between(byAccountTime, account_id, true, from, to, after_time, after_id, limit);
+    }
+
+    /**
+     * Walks a time index from the later of the window's start and the position, like H2's range scan.
+     */
+    private List<Message> between(NavigableSet<TimeKey> index, int account_id, boolean byAccount, long from, long to,
+                                  long after_time, int after_id, int limit) {
+        TimeKey after = new TimeKey(account_id, after_time, after_id);
+        TimeKey start = new TimeKey(account_id, from, Integer.MIN_VALUE);
+        NavigableSet<TimeKey> tail = index.comparator().compare(after, start) >= 0
+                ? index.tailSet(after, false)
+                : index.tailSet(start, true);
+        List<Message> page = new ArrayList<>(Math.min(limit, 1024));
+        for(TimeKey key : tail){
+            if(page.size() >= limit || key.time_posted_epoch >= to || (byAccount && key.posted_by != account_id)){
+                break;
+            }
+            Message message = messages.get(key.message_id);
+            if(message != null){
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Creates a message with the next message ID.
+     * @return the new message, or null if its author does not exist or its text is too long.
+     * @throws IOException If the change cannot be logged, in which case it is not made.
+     */
+    public synchronized Message addMessage(Message message) throws IOException {
+        if(!isInsertable(message)){
+            return null;
+        }
+        Message added = logMessageInsert(nextMessageId, message);
+        wal.commit();
+        putMessage(added);
+        return added;
+    }
+
+    /**
+     * Creates several messages with one log write.
+     * @return a list of the same size and order, holding each new message, or null where its author does not
+     * exist or its text is too long.
+     * @throws IOException If the changes cannot be logged, in which case none of them is made.
+     */
+    public synchronized List<Message> addMessages(List<Message> messages) throws IOException {
+        List<Message> added = new ArrayList<>(messages.size());
+        int id = nextMessageId;
+        for(Message message : messages){
+            added.add(isInsertable(message) ? logMessageInsert(id++, message) : null);
+        }
+        wal.commit();
+        for(Message message : added){
+            if(message != null){
+                putMessage(message);
+            }
+        }
+        return added;
+    }
+
+    private boolean isInsertable(Message message) {
+        return accounts.get(message.posted_by) != null && !tooLong(message.message_text);
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > MAX_LENGTH;
+    }
+
+    private Message logMessageInsert(int message_id, Message message) throws IOException {
+        Message added = new Message(message_id, message.posted_by, message.message_text, message.time_posted_epoch);
+        DataOutputStream out = wal.begin(MESSAGE_INSERT);
+        out.writeInt(added.message_id);
+        out.writeInt(added.posted_by);
+        writeString(out, added.message_text);
+        out.writeLong(added.time_posted_epoch);
+        wal.end();
+        return added;
+    }
+
+    /**
+     * Replaces a message's text.
+     * @return the updated message, or null if no message has the ID or the text is too long.
+     * @throws IOException If the change cannot be logged, in which case it is not made.
+     */
+    public synchronized Message updateMessage(int message_id, String message_text) throws IOException {
+        Message message = messages.get(message_id);
+        if(message == null || tooLong(message_text)){
+            return null;
+        }
+        DataOutputStream out = wal.begin(MESSAGE_UPDATE);
+        out.writeInt(message_id);
+        writeString(out, message_text);
+        wal.end();
+        wal.commit();
+        Message updated = new Message(message_id, message.posted_by, message_text, message.time_posted_epoch);
+        messages.put(message_id, updated);
+        return updated;
+    }
+
+    /**
+     * Deletes messages with one log write.
+     * @return the deleted messages, in the order their IDs were given. IDs with no message are left out.
+     * @throws IOException If the changes cannot be logged, in which case none of them is made.
+     */
+    public synchronized List<Message> removeMessages(int... message_ids) throws IOException {
+        List<Message> removed = new ArrayList<>(message_ids.length);
+        Set<Integer> seen = new HashSet<>();
+        for(int message_id : message_ids){
+            Message message = messages.get(message_id);
+            if(message != null && seen.add(message_id)){
+                wal.begin(MESSAGE_DELETE).writeInt(message_id);
+                wal.end();
+                removed.add(message);
+            }
+        }
+        wal.commit();
+        for(Message message : removed){
+            deleteMessage(message.message_id);
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of bytes in the current log segment.
+     */
+    public synchronized long getWalBytes() throws IOException {
+        return wal.size();
+    }
+
+    private void putAccount(Account account) {
+        Account previous = accounts.put(account.account_id, account);
+        if(previous != null){
+            accountsByUsername.remove(previous.username);
+        }
+        accountsByUsername.put(account.username, account);
+        nextAccountId = Math.max(nextAccountId, account.account_id + 1);
+    }
+
+    private void putMessage(Message message) {
+        messages.put(message.message_id, message);
+        nextMessageId = Math.max(nextMessageId, message.message_id + 1);
+        Timeline timeline = timelines.get(message.posted_by);
+        int[] ids = timeline == null ? new int[8] : timeline.ids;
+        int size = timeline == null ? 0 : timeline.size;
+        int live = timeline == null ? 0 : timeline.live;
+        if(size == ids.length){
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size] = message.message_id;
+        timelines.put(message.posted_by, new Timeline(ids, size + 1, live + 1));
+        TimeKey key = TimeKey.of(message);
+        byTime.add(key);
+        byAccountTime.add(key);
+    }
+
+    private void deleteMessage(int message_id) {
+        Message message = messages.remove(message_id);
+        if(message == null){
+            return;
+        }
+        TimeKey key = TimeKey.of(message);
+        byTime.remove(key);
+        byAccountTime.remove(key);
+        Timeline timeline = timelines.get(message.posted_by);
+        int live = timeline.live - 1;
+        if(live >= timeline.size / 2 || timeline.size < 32){
+            timelines.put(message.posted_by, new Timeline(timeline.ids, timeline.size, live));
+            return;
+        }
+        int[] ids = new int[Math.max(8, live * 2)];
+        int size = 0;
+        for(int i = 0; i < timeline.size; i++){
+            if(messages.get(timeline.ids[i]) != null){
+                ids[size++] = timeline.ids[i];
+            }
+        }
+        timelines.put(message.posted_by, new Timeline(ids, size, size));
+    }
+
+    /**
+     * Applies one replayed log record.
+     */
+    private void apply(byte type, DataInputStream in) throws IOException {
+        switch(type){
+            case ACCOUNT_INSERT: {
+                int account_id = in.readInt();
+                String username = readString(in);
+                putAccount(new Account(account_id, username, readString(in)));
+                break;
+            }
+            case PASSWORD_UPDATE: {
+                int account_id = in.readInt();
+                String password = readString(in);
+                Account account = accounts.get(account_id);
+                if(account != null){
+                    putAccount(new Account(account_id, account.username, password));
+                }
+                break;
+            }
+            case MESSAGE_INSERT: {
+                int message_id = in.readInt();
+                int posted_by = in.readInt();
+                String message_text = readString(in);
+                putMessage(new Message(message_id, posted_by, message_text, in.readLong()));
+                break;
+            }
+            case MESSAGE_UPDATE: {
+                int message_id = in.readInt();
+                String message_text = readString(in);
+                Message message = messages.get(message_id);
+                if(message != null){
+                    messages.put(message_id, new Message(message_id, message.posted_by, message_text, message.time_posted_epoch));
+                }
+                break;
+            }
+            case MESSAGE_DELETE:
+                deleteMessage(in.readInt());
+                break;
+            default:
+                throw new IOException("unknown log record type " + type);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot and replays the log segments written after it. A directory holding neither
+     * gives an empty store writing to the first segment.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> snapshots = sequences(SNAPSHOT_FILE);
+        List<Long> segments = sequences(SEGMENT_FILE);
+        long first = 0;
+        if(!snapshots.isEmpty()){
+            first = snapshots.get(snapshots.size() - 1);
+            loadSnapshot(snapshotPath(first));
+        }
+        long last = Math.max(first, 1);
+        long validLength = 0;
+        for(long sequence : segments){
+            if(sequence >= first){
+                validLength = WriteAheadLog.replay(segmentPath(sequence), this::apply);
+                last = sequence;
+            }
+        }
+        openSegment(last, validLength);
+    }
+
+    private void openSegment(long sequence, long validLength) throws IOException {
+        this.wal = new WriteAheadLog(segmentPath(sequence), validLength, syncPolicy);
+        this.segment = sequence;
+    }
+
+    /**
+     * Copies every account and message from the given DAOs into this store, keeping their IDs, and takes a
+     * snapshot of the result, so the copy is made once and later starts recover from the store's own files.
+     * This is the one-time migration off H2; nothing else in the store reads from another DAO.
+     * @param accountDao The DAO to read the accounts from.
+     * @param messageDao The DAO to read the messages from.
+     * @throws IllegalStateException If the store has ever held an account or a message.
+     * @throws IOException If the rows cannot be read or the snapshot cannot be written, in which case the store
+     * is left empty.
+     */
+    public void importFrom(AccountDao accountDao, MessageDao messageDao) throws IOException {
+        synchronized(snapshotLock){
+            synchronized(this){
+                if(nextAccountId != 1 || nextMessageId != 1){
+                    throw new IllegalStateException("the store already holds data");
+                }
+                try {
+                    accountDao.loadAccounts(this::putAccount);
+                    messageDao.exportMessages(row ->
+                            putMessage(new Message(row.message_id, row.posted_by, row.message_text, row.time_posted_epoch)));
+                    snapshot();
+                } catch(IOException | RuntimeException e){
+                    clear();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the whole state to a new snapshot and deletes the snapshot and log segments it replaces. The log
+     * moves to a new segment and the rows are collected under the store's lock, which costs one pass over the
+     * row references; the snapshot itself is written while writes continue into the new segment.
+     * @throws IOException If the snapshot cannot be written; the previous one and its segments are then kept.
+     */
+    public void snapshot() throws IOException {
+        synchronized(snapshotLock){
+            long sequence;
+            int accountId;
+            int messageId;
+            List<Account> accountRows;
+            List<Message> messageRows;
+            synchronized(this){
+                sequence = segment + 1;
+                WriteAheadLog previous = wal;
+                openSegment(sequence, 0);
+                previous.close();
+                accountId = nextAccountId;
+                messageId = nextMessageId;
+                accountRows = rows(accounts);
+                messageRows = rows(messages);
+                lastSnapshotMillis = System.currentTimeMillis();
+            }
+            writeSnapshot(sequence, accountId, messageId, accountRows, messageRows);
+            for(long old : sequences(SNAPSHOT_FILE)){
+                if(old < sequence){
+                    Files.deleteIfExists(snapshotPath(old));
+                }
+            }
+            for(long old : sequences(SEGMENT_FILE)){
+                if(old < sequence){
+                    Files.deleteIfExists(segmentPath(old));
+                }
+            }
+        }
+    }
+
+    private void maybeSnapshot() {
+        try {
+            long walBytes;
+            long sinceSnapshot;
+            synchronized(this){
+                walBytes = wal.size();
+                sinceSnapshot = System.currentTimeMillis() - lastSnapshotMillis;
+            }
+            if(walBytes >= snapshotWalBytes || (walBytes > 0 && sinceSnapshot >= snapshotIntervalMillis)){
+                snapshot();
+            }
+        } catch(IOException e){
+            snapshotFailures.incrementAndGet();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Forces the log on the INTERVAL timer. A failure is counted, and the log then forces every commit itself
+     * until a force succeeds, so writes are not acknowledged while nothing reaches the disk.
+     */
+    private synchronized void sync() {
+        try {
+            wal.sync();
+        } catch(IOException e){
+            syncFailures.incrementAndGet();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of timed log syncs that failed.
+     */
+    public long getSyncFailures() {
+        return syncFailures.get();
+    }
+
+    /**
+     * @return the number of background snapshots that failed. The log is kept until a snapshot succeeds, so
+     * nothing is lost, but recovery replays more of it.
+     */
+    public long getSnapshotFailures() {
+        return snapshotFailures.get();
+    }
+
+    /**
+     * Discards the whole state, with its snapshots and log, leaving an empty store. Used by the tests, which
+     * start each case from the same data.
+     * @throws IOException If the files cannot be deleted or the new log cannot be opened.
+     */
+    public void reset() throws IOException {
+        synchronized(snapshotLock){
+            synchronized(this){
+                wal.close();
+                for(long sequence : sequences(SNAPSHOT_FILE)){
+                    Files.deleteIfExists(snapshotPath(sequence));
+                }
+                for(long sequence : sequences(SEGMENT_FILE)){
+                    Files.deleteIfExists(segmentPath(sequence));
+                }
+                clear();
+                openSegment(1, 0);
+                lastSnapshotMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private void clear() {
+        accounts.clear();
+        accountsByUsername.clear();
+        messages.clear();
+        timelines.clear();
+        byTime.clear();
+        byAccountTime.clear();
+        nextAccountId = 1;
+        nextMessageId = 1;
+    }
+
+    /**
+     * Stops the background tasks and forces the log to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        maintenance.shutdown();
+        synchronized(this){
+            wal.close();
+        }
+    }
+
+    private static <T> List<T> rows(IntTable<T> table) {
+        int limit = table.limit();
+        List<T> rows = new ArrayList<>();
+        for(int id = 0; id < limit; id++){
+            T row = table.get(id);
+            if(row != null){
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it to disk and renames it into place, so a snapshot file
+     * that exists is always complete. The file ends with the CRC32 of everything before it.
+     */
+    private void writeSnapshot(long sequence, int accountId, int messageId, List<Account> accountRows,
+                               List<Message> messageRows) throws IOException {
+        Path temporary = directory.resolve("snapshot-" + sequence + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(file);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(accountId);
+            out.writeInt(messageId);
+            out.writeInt(accountRows.size());
+            for(Account account : accountRows){
+                out.writeInt(account.account_id);
+                writeString(out, account.username);
+                writeString(out, account.password);
+            }
+            out.writeInt(messageRows.size());
+            for(Message message : messageRows){
+                out.writeInt(message.message_id);
+                out.writeInt(message.posted_by);
+                writeString(out, message.message_text);
+                out.writeLong(message.time_posted_epoch);
+            }
+            out.flush();
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temporary, snapshotPath(sequence), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadSnapshot(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(stream, crc));
+            if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION){
+                throw new IOException(file + " is not a snapshot this version can read");
+            }
+            int accountId = in.readInt();
+            int messageId = in.readInt();
+            for(int i = in.readInt(); i > 0; i--){
+                int account_id = in.readInt();
+                String username = readString(in);
+                putAccount(new Account(account_id, username, readString(in)));
+            }
+            for(int i = in.readInt(); i > 0; i--){
+                int message_id = in.readInt();
+                int posted_by = in.readInt();
+                String message_text = readString(in);
+                putMessage(new Message(message_id, posted_by, message_text, in.readLong()));
+            }
+            long expected = crc.getValue();
+            if(new DataInputStream(stream).readLong() != expected){
+                throw new IOException(file + " is corrupt");
+            }
+            nextAccountId = Math.max(nextAccountId, accountId);
+            nextMessageId = Math.max(nextMessageId, messageId);
+        }
+    }
+
+    private List<Long> sequences(Pattern pattern) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if(matcher.matches()){
+                    sequences.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        sequences.sort(null);
+        return sequences;
+    }
+
+    private Path snapshotPath(long sequence) {
+        return directory.resolve("snapshot-" + sequence + ".bin");
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve("wal-" + sequence + ".log");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null){
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
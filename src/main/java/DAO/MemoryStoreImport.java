@@ -0,0 +1,24 @@
+package DAO;
+
+import java.io.IOException;
+
+import Util.ConnectionUtil;
+
+/**
+ * One-time migration from H2 to the in-memory engine. Brings the H2 schema up to date, then copies every
+ * account and message into a new store in -Dstorage.memory.dir and snapshots it. Run it once, with the app
+ * stopped, before the first start with -Dstorage.engine=memory; it refuses a store that already holds data.
+ */
+public class MemoryStoreImport {
+
+    private MemoryStoreImport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        ConnectionUtil.migrate();
+        try (MemoryStore store = Storage.openMemoryStore()) {
+            store.importFrom(new AccountDao(), new MessageDao());
+            System.out.println("Imported the H2 database into " + System.getProperty("storage.memory.dir", "./memstore"));
+        }
+    }
+}
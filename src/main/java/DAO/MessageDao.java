@@ -1,62 +1,192 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 /**
  * Data Access Object (DAO) for managing messages in the database.
  */
 public class MessageDao {
+    /**
+     * Number of rows fetched per round trip when streaming the message table.
+     */
+    static final int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Call counts, latencies and failures of each method, reported at /metrics. The in-memory DAO records
+     * into the same timers, so the metrics do not depend on the storage engine.
+     */
+    static final Metrics.Timer ADD_MESSAGE = Metrics.query("MessageDao", "addMessage");
+    static final Metrics.Timer ADD_MESSAGES = Metrics.query("MessageDao", "addMessages");
+    static final Metrics.Timer GET_MESSAGE = Metrics.query("MessageDao", "getMessage");
+    static final Metrics.Timer GET_ALL_MESSAGES = Metrics.query("MessageDao", "getAllMessages");
+    static final Metrics.Timer GET_ALL_MESSAGES_BY_ACCOUNT = Metrics.query("MessageDao", "getAllMessagesByAccount");
+    static final Metrics.Timer GET_MESSAGES_AFTER = Metrics.query("MessageDao", "getMessagesAfter");
+    static final Metrics.Timer GET_MESSAGES_AFTER_BY_ACCOUNT = Metrics.query("MessageDao", "getMessagesAfterByAccount");
+    static final Metrics.Timer GET_MESSAGES_BETWEEN = Metrics.query("MessageDao", "getMessagesBetween");
+    static final Metrics.Timer GET_MESSAGES_BETWEEN_BY_ACCOUNT = Metrics.query("MessageDao", "getMessagesBetweenByAccount");
+    static final Metrics.Timer EXPORT_MESSAGES = Metrics.query("MessageDao", "exportMessages");
+    static final Metrics.Timer REMOVE_MESSAGE = Metrics.query("MessageDao", "removeMessage");
+    static final Metrics.Timer REMOVE_MESSAGES = Metrics.query("MessageDao", "removeMessages");
+    static final Metrics.Timer UPDATE_MESSAGE = Metrics.query("MessageDao", "updateMessage");
+
+    /**
+     * Shared group-commit queue, present only when -Ddb.groupCommit=true. The batch size and flush deadline
+     * can be tuned with -Ddb.groupCommit.maxBatchSize and -Ddb.groupCommit.maxDelayMicros.
+     */
+    private static final GroupCommitQueue GROUP_COMMIT = Boolean.getBoolean("db.groupCommit")
+            ? new GroupCommitQueue(new MessageDao(),
+                                   Integer.getInteger("db.groupCommit.maxBatchSize", 64),
+                                   Long.getLong("db.groupCommit.maxDelayMicros", 200))
+            : null;
 
     /**
-     * Adds a new message to the database.
+     * Receives rows one at a time while the message table is streamed.
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+        /**
+         * @param message The current row. The same instance is reused for every row, so it must not be kept.
+         * @throws IOException If the row cannot be written; this stops the stream.
+         */
+        void accept(Message message) throws IOException;
+    }
+
+    /**
+     * Adds a new message to the database. In group-commit mode the insert is queued and committed together with
+     * other concurrent inserts, and this call returns once that batch has committed.
      * @param message The Message object containing the message details to be added.
      * @return The newly created Message object with the generated ID, or null if the insertion failed.
      */
     public Message addMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
         try {
-            String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?,?,?)";
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            if(GROUP_COMMIT != null){
+                return GROUP_COMMIT.add(message);
+            }
+            return insertMessage(message);
+        } finally {
+            ADD_MESSAGE.recordSince(start);
+        }
+    }
+
+    /**
+     * Inserts a single message on its own connection with auto-commit.
+     */
+    private Message insertMessage(Message message) {
+        String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?,?,?)";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, message.posted_by);
             ps.setString(2, message.message_text);
             ps.setLong(3, message.time_posted_epoch);
             ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            if(rs.next()){
-                int msgId = (int) rs.getLong(1);
-                return new Message(msgId, message.posted_by, message.message_text, message.time_posted_epoch);
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if(rs.next()){
+                    int msgId = (int) rs.getLong(1);
+                    return new Message(msgId, message.posted_by, message.message_text, message.time_posted_epoch);
+                }
             }
         }catch(SQLException e){
+            ADD_MESSAGE.error();
             System.out.println(e.getMessage());
         }
         return null;
     }
 
+    /**
+     * Adds several messages to the database in one transaction with a single JDBC batch. If the batch fails,
+     * for example because one row violates a constraint, it is rolled back and the messages are inserted one
+     * at a time so that the valid ones still succeed.
+     * @param messages The messages to add.
+     * @return A list of the same size and order as messages, holding each created Message with its generated
+     * ID, or null where that insert failed.
+     */
+    public List<Message> addMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        try {
+            return insertBatch(messages);
+        } finally {
+            ADD_MESSAGES.recordSince(start);
+        }
+    }
+
+    /**
+     * Inserts the messages with one JDBC batch, falling back to one insert per message if the batch fails. A
+     * failed batch is counted as an error of addMessages even when every row then goes in on its own.
+     */
+    private List<Message> insertBatch(List<Message> messages) {
+        List<Message> added = new ArrayList<>(messages.size());
+        String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?,?,?)";
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for(Message message : messages){
+                    ps.setInt(1, message.posted_by);
+                    ps.setString(2, message.message_text);
+                    ps.setLong(3, message.time_posted_epoch);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    for(Message message : messages){
+                        if(!rs.next()){
+                            throw new SQLException("missing generated key for batched insert");
+                        }
+                        int msgId = (int) rs.getLong(1);
+                        added.add(new Message(msgId, message.posted_by, message.message_text, message.time_posted_epoch));
+                    }
+                }
+                connection.commit();
+                return added;
+            } catch(SQLException e){
+                ADD_MESSAGES.error();
+                System.out.println(e.getMessage());
+                connection.rollback();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }catch(SQLException e){
+            ADD_MESSAGES.error();
+            System.out.println(e.getMessage());
+        }
+        added.clear();
+        for(Message message : messages){
+            added.add(insertMessage(message));
+        }
+        return added;
+    }
+
     /**
      * Retrieves a message from the database by its ID.
      * @param id The ID of the message to retrieve.
      * @return The Message object with the specified ID, or null if not found.
      */
     public Message getMessage(int id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "select * from message where message_id = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        long start = System.nanoTime();
+        String sql = "select * from message where message_id = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                return new Message(rs.getInt("message_id"), 
-                                   rs.getInt("posted_by"),
-                                   rs.getString("message_text"),
-                                   rs.getLong("time_posted_epoch"));
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    return new Message(rs.getInt("message_id"), 
+                                       rs.getInt("posted_by"),
+                                       rs.getString("message_text"),
+                                       rs.getLong("time_posted_epoch"));
+                }
             }
         }catch(SQLException e){
+            GET_MESSAGE.error();
             System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGE.recordSince(start);
         }
         return null;
     }
@@ -66,12 +196,12 @@ public class MessageDao {
      * @return A list of all Message objects in the database.
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "select * from message";
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery();
+        String sql = "select * from message";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
             while(rs.next()){
                 messages.add(new Message(rs.getInt("message_id"), 
                                          rs.getInt("posted_by"), 
@@ -79,7 +209,10 @@ public class MessageDao {
                                          rs.getLong("time_posted_epoch")));
             }
         }catch(SQLException e){
+            GET_ALL_MESSAGES.error();
             System.out.println(e.getMessage());
+        } finally {
+            GET_ALL_MESSAGES.recordSince(start);
         }
         return messages;
     }
@@ -90,56 +223,312 @@ public class MessageDao {
      * @return A list of Message objects for the specified account.
      */
     public List<Message> getAllMessages(int account_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "select * from message where posted_by = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+        String sql = "select * from message where posted_by = ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, account_id);
-            ResultSet rs = ps.executeQuery();
-            while(rs.next()){
-                messages.add(new Message(rs.getInt("message_id"), 
-                                         rs.getInt("posted_by"), 
-                                         rs.getString("message_text"),
-                                         rs.getLong("time_posted_epoch")));
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
             }
         }catch(SQLException e){
+            GET_ALL_MESSAGES_BY_ACCOUNT.error();
             System.out.println(e.getMessage());
+        } finally {
+            GET_ALL_MESSAGES_BY_ACCOUNT.recordSince(start);
         }
         return messages;
     }
 
     /**
-     * Removes a message from the database by its ID.
+     * Retrieves one page of messages ordered by message_id, starting after the given ID. The query seeks
+     * directly to after_id on the primary key, so a page costs the same wherever it is in the table.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return A list of at most limit Message objects.
+     */
+    public List<Message> getMessagesAfter(int after_id, int limit) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(limit);
+        String sql = "select * from message where message_id > ? order by message_id limit ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, after_id);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
+            }
+        }catch(SQLException e){
+            GET_MESSAGES_AFTER.error();
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_AFTER.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves one page of messages posted by a specific account, ordered by message_id and starting after
+     * the given ID. The query seeks on the (posted_by, message_id) index, so a page costs the same however many
+     * messages the account has posted.
+     * @param account_id The ID of the account whose messages to retrieve.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return A list of at most limit Message objects for the specified account.
+     */
+    public List<Message> getMessagesAfter(int account_id, int after_id, int limit) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(limit);
+        String sql = "select * from message where posted_by = ? and message_id > ? order by message_id limit ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, account_id);
+            ps.setInt(2, after_id);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
+            }
+        }catch(SQLException e){
+            GET_MESSAGES_AFTER_BY_ACCOUNT.error();
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_AFTER_BY_ACCOUNT.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves one page of the messages posted in a time window, ordered by time_posted_epoch and then
+     * message_id, starting after the given position. The query is a range scan on the time_posted_epoch index
+     * from the later of the window's start and the position, so a page costs the same wherever it is in the
+     * window.
+     * @param from The earliest time_posted_epoch to include.
+     * @param to The time_posted_epoch to stop before.
+     * @param after_time The time_posted_epoch of the last message on the previous page, or Long.MIN_VALUE.
+     * @param after_id The message_id of the last message on the previous page, or 0.
+     * @param limit The maximum number of messages to return.
+     * @return A list of at most limit Message objects.
+     */
+    public List<Message> getMessagesBetween(long from, long to, long after_time, int after_id, int limit) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(limit);
+        String sql = "select * from message where time_posted_epoch >= ? and time_posted_epoch < ? "
+                   + "and (time_posted_epoch > ? or message_id > ?) order by time_posted_epoch, message_id limit ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, Math.max(from, after_time));
+            ps.setLong(2, to);
+            ps.setLong(3, after_time);
+            ps.setInt(4, after_id);
+            ps.setInt(5, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
+            }
+        }catch(SQLException e){
+            GET_MESSAGES_BETWEEN.error();
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_BETWEEN.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves one page of the messages posted by a specific account in a time window, ordered by
+     * time_posted_epoch and then message_id, with a range scan on the (posted_by, time_posted_epoch) index.
+     * @param account_id The ID of the account whose messages to retrieve.
+     * @param from The earliest time_posted_epoch to include.
+     * @param to The time_posted_epoch to stop before.
+     * @param after_time The time_posted_epoch of the last message on the previous page, or Long.MIN_VALUE.
+     * @param after_id The message_id of the last message on the previous page, or 0.
+     * @param limit The maximum number of messages to return.
+     * @return A list of at most limit Message objects for the specified account.
+     */
+    public List<Message> getMessagesBetween(int account_id, long from, long to, long after_time, int after_id, int limit) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(limit);
+        // H2 prefers the foreign key index on posted_by while the table is small, and only reads the rows in
+        // index order, without sorting them, when the order by starts with the equality column
+        String sql = "select * from message use index (message_posted_by_time_idx) where posted_by = ? "
+                   + "and time_posted_epoch >= ? and time_posted_epoch < ? and (time_posted_epoch > ? or message_id > ?) "
+                   + "order by posted_by, time_posted_epoch, message_id limit ?";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, account_id);
+            ps.setLong(2, Math.max(from, after_time));
+            ps.setLong(3, to);
+            ps.setLong(4, after_time);
+            ps.setInt(5, after_id);
+            ps.setInt(6, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
+            }
+        }catch(SQLException e){
+            GET_MESSAGES_BETWEEN_BY_ACCOUNT.error();
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_BETWEEN_BY_ACCOUNT.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Streams every message in the table, in message_id order, to the given handler without building a list.
+     * The query runs lazily on a forward-only cursor so rows are produced as they are read, and an
+     * IOException from the handler (for example a client disconnect) closes the cursor and stops the query.
+     * Lazy execution is switched back off before the connection returns to the pool, however the stream ends.
+     * @param handler The handler that receives each row.
+     * @throws IOException If the handler fails, or if the query fails, possibly after some rows were handled.
+     */
+    public void exportMessages(MessageHandler handler) throws IOException {
+        long start = System.nanoTime();
+        String sql = "select message_id, posted_by, message_text, time_posted_epoch from message order by message_id";
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement lazy = connection.createStatement()) {
+                lazy.execute("set lazy_query_execution true");
+            }
+            try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(EXPORT_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    Message row = new Message();
+                    while(rs.next()){
+                        row.message_id = rs.getInt(1);
+                        row.posted_by = rs.getInt(2);
+                        row.message_text = rs.getString(3);
+                        row.time_posted_epoch = rs.getLong(4);
+                        handler.accept(row);
+                    }
+                }
+            } finally {
+                try (Statement lazy = connection.createStatement()) {
+                    lazy.execute("set lazy_query_execution false");
+                }
+            }
+        }catch(SQLException e){
+            EXPORT_MESSAGES.error();
+            throw new IOException("the message export failed: " + e.getMessage(), e);
+        } finally {
+            EXPORT_MESSAGES.recordSince(start);
+        }
+    }
+
+    /**
+     * Removes a message from the database by its ID and returns the row that was deleted, in a single
+     * statement. Reading the row from the delete's OLD TABLE means there is no gap between the read and the
+     * delete for another request to slip into.
      * @param message_id The ID of the message to delete.
+     * @return The deleted Message object, or null if no message had that ID.
      */
-    public void removeMessage(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "delete from message where message_id = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+    public Message removeMessage(int message_id) {
+        long start = System.nanoTime();
+        String sql = "select * from old table (delete from message where message_id = ?)";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, message_id);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    return new Message(rs.getInt("message_id"), 
+                                       rs.getInt("posted_by"),
+                                       rs.getString("message_text"),
+                                       rs.getLong("time_posted_epoch"));
+                }
+            }
+        }catch(SQLException e){
+            REMOVE_MESSAGE.error();
+            System.out.println(e.getMessage());
+        } finally {
+            REMOVE_MESSAGE.recordSince(start);
+        }
+        return null;
+    }
+
+    /**
+     * Removes several messages by ID in a single statement and returns the rows that were deleted. The IDs are
+     * bound as one array parameter, so the statement is the same whatever the number of IDs.
+     * @param message_ids The IDs of the messages to delete.
+     * @return The deleted Message objects, in no particular order. IDs with no message are left out.
+     */
+    public List<Message> removeMessages(int[] message_ids) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(message_ids.length);
+        String sql = "select * from old table (delete from message where message_id = any(?))";
+        Integer[] ids = new Integer[message_ids.length];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = message_ids[i];
+        }
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, ids);
+            try (ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt("message_id"), 
+                                             rs.getInt("posted_by"), 
+                                             rs.getString("message_text"),
+                                             rs.getLong("time_posted_epoch")));
+                }
+            }
         }catch(SQLException e){
+            REMOVE_MESSAGES.error();
             System.out.println(e.getMessage());
+        } finally {
+            REMOVE_MESSAGES.recordSince(start);
         }
+        return messages;
     }
 
     /**
-     * Updates the text of an existing message by its ID.
+     * Updates the text of an existing message by its ID and returns the updated row, in a single statement.
      * @param message_id The ID of the message to update.
      * @param message The Message object containing the new message text.
+     * @return The updated Message object, or null if no message had that ID.
      */
-    public void updateMessage(int message_id, Message message) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "update message set message_text = ? where message_id = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
+    public Message updateMessage(int message_id, Message message) {
+        long start = System.nanoTime();
+        String sql = "select * from final table (update message set message_text = ? where message_id = ?)";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, message.message_text);
             ps.setInt(2, message_id);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    return new Message(rs.getInt("message_id"), 
+                                       rs.getInt("posted_by"),
+                                       rs.getString("message_text"),
+                                       rs.getLong("time_posted_epoch"));
+                }
+            }
         }catch(SQLException e){
+            UPDATE_MESSAGE.error();
             System.out.println(e.getMessage());
+        } finally {
+            UPDATE_MESSAGE.recordSince(start);
         }
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Chooses the storage engine behind the DAOs the services use. Set -Dstorage.engine=memory to keep the data in
+ * an in-memory store with a write-ahead log instead of H2 (the default, -Dstorage.engine=h2).
+ *
+ * The in-memory store is configured with:
+ * -Dstorage.memory.dir, the directory holding its snapshots and log (default ./memstore);
+ * -Dstorage.memory.fsync, when the log is forced to disk: always, interval (the default) or never;
+ * -Dstorage.memory.syncIntervalMillis, how often the log is forced under the interval policy (default 1000);
+ * -Dstorage.memory.snapshotIntervalSeconds, how often a snapshot is taken if anything changed (default 300);
+ * -Dstorage.memory.snapshotWalBytes, the log size that triggers an early snapshot (default 64MB).
+ *
+ * The memory engine never opens H2. A store in a new directory starts empty; run MemoryStoreImport once with
+ * the same settings to bring over the data an H2 database already holds.
+ */
+public class Storage {
+
+    private static final String ENGINE = System.getProperty("storage.engine", "h2").toLowerCase(Locale.ROOT);
+
+    private static MemoryStore memoryStore;
+
+    static {
+        if(!ENGINE.equals("h2") && !ENGINE.equals("memory")){
+            throw new IllegalArgumentException("unknown storage.engine: " + ENGINE);
+        }
+    }
+
+    private Storage() {
+    }
+
+    /**
+     * @return true if the in-memory engine is selected.
+     */
+    public static boolean isMemory() {
+        return ENGINE.equals("memory");
+    }
+
+    /**
+     * @return a new AccountDao for the selected engine.
+     */
+    public static AccountDao accountDao() {
+        return isMemory() ? new MemoryAccountDao(memoryStore()) : new AccountDao();
+    }
+
+    /**
+     * @return a new MessageDao for the selected engine.
+     */
+    public static MessageDao messageDao() {
+        return isMemory() ? new MemoryMessageDao(memoryStore()) : new MessageDao();
+    }
+
+    /**
+     * Opens the in-memory store the first time it is needed. It is closed by a shutdown hook, which forces the
+     * log to disk whatever the fsync policy.
+     * @return the store behind the memory engine's DAOs.
+     * @throws IllegalStateException If H2 is selected.
+     */
+    public static synchronized MemoryStore memoryStore() {
+        if(!isMemory()){
+            throw new IllegalStateException("storage.engine is not memory");
+        }
+        if(memoryStore == null){
+            try {
+                MemoryStore store = openMemoryStore();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        store.close();
+                    } catch(IOException e){
+                        System.out.println(e.getMessage());
+                    }
+                }, "memory-store-shutdown"));
+                memoryStore = store;
+            } catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        return memoryStore;
+    }
+
+    /**
+     * @return a new store opened with the storage.memory settings. The caller closes it.
+     * @throws IOException If the store's directory cannot be read or written.
+     */
+    static MemoryStore openMemoryStore() throws IOException {
+        Path directory = Paths.get(System.getProperty("storage.memory.dir", "./memstore"));
+        Files.createDirectories(directory);
+        WriteAheadLog.SyncPolicy policy = WriteAheadLog.SyncPolicy.valueOf(
+                System.getProperty("storage.memory.fsync", "interval").toUpperCase(Locale.ROOT));
+        return new MemoryStore(directory, policy,
+                Long.getLong("storage.memory.syncIntervalMillis", 1000),
+                Long.getLong("storage.memory.snapshotIntervalSeconds", 300) * 1000,
+                Long.getLong("storage.memory.snapshotWalBytes", 64L << 20));
+    }
+}
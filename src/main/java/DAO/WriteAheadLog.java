@@ -0,0 +1,243 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to the in-memory store, one file per segment. A change is written to
+ * the log before it is applied in memory, so replaying the log on top of the snapshot it follows rebuilds the
+ * state the store had when it stopped.
+ *
+ * Each record is framed as its payload length, the CRC32 of the payload, and the payload itself. A crash can
+ * leave a partially written record at the end of the file; replay stops at the first record that is cut short
+ * or fails its checksum, and the caller truncates the file there.
+ *
+ * Not thread-safe: the store serializes all writers.
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum SyncPolicy {
+        /**
+         * Before commit() returns. A change that was acknowledged survives a power failure.
+         */
+        ALWAYS,
+        /**
+         * By sync(), which the store calls on a timer. A power failure loses at most one interval of changes;
+         * a process crash loses nothing, since the records are already in the operating system's cache. After a
+         * sync fails, every commit forces the segment as under ALWAYS until a sync succeeds again.
+         */
+        INTERVAL,
+        /**
+         * Only when the segment is closed, leaving the rest to the operating system.
+         */
+        NEVER
+    }
+
+    /**
+     * Receives the records of a segment during replay.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * @param type The record type given to begin().
+         * @param in The record's fields.
+         * @throws IOException If the record cannot be decoded.
+         */
+        void accept(byte type, DataInputStream in) throws IOException;
+    }
+
+    private static final int HEADER_BYTES = 8;
+    /**
+     * Larger than any record the store writes. A bigger length can only come from a torn header.
+     */
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private boolean dirty;
+    private boolean syncFailed;
+
+    /**
+     * Opens a segment for appending, creating it if needed.
+     * @param file The segment file.
+     * @param validLength The length of the valid prefix found by replay; anything after it is cut off.
+     * @param policy When appended records are forced to disk.
+     * @throws IOException If the file cannot be opened.
+     */
+    public WriteAheadLog(Path file, long validLength, SyncPolicy policy) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.policy = policy;
+        if(channel.size() > validLength){
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    /**
+     * Starts a record. Its fields are written to the returned stream, and the record is finished by end().
+     * @param type The record type, passed back to the handler on replay.
+     * @return the stream to write the record's fields to.
+     */
+    public DataOutputStream begin(byte type) throws IOException {
+        record.reset();
+        recordOut.writeByte(type);
+        return recordOut;
+    }
+
+    /**
+     * Finishes the record started by begin() and queues it for the next commit().
+     */
+    public void end() {
+        byte[] bytes = record.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        int checksum = (int) crc.getValue();
+        pending.write(bytes.length >>> 24);
+        pending.write(bytes.length >>> 16);
+        pending.write(bytes.length >>> 8);
+        pending.write(bytes.length);
+        pending.write(checksum >>> 24);
+        pending.write(checksum >>> 16);
+        pending.write(checksum >>> 8);
+        pending.write(checksum);
+        pending.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes every record queued since the last commit with one write, and forces it to disk if the policy is
+     * ALWAYS or the last sync failed. If the write or the force fails the segment is cut back to where it was,
+     * so the queued records are dropped as a whole and later records do not follow a torn one.
+     * @throws IOException If the records cannot be written or forced.
+     */
+    public void commit() throws IOException {
+        if(pending.size() == 0){
+            return;
+        }
+        long position = channel.position();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            if(policy == SyncPolicy.ALWAYS || syncFailed){
+                channel.force(false);
+                syncFailed = false;
+                dirty = false;
+            } else {
+                dirty = true;
+            }
+        } catch(IOException e){
+            channel.truncate(position);
+            channel.position(position);
+            throw e;
+        } finally {
+            pending.reset();
+        }
+    }
+
+    /**
+     * Forces records written since the last sync to disk. Called on a timer under the INTERVAL policy. If it
+     * fails, commits force the segment themselves until a sync or a commit succeeds in forcing it, so no write
+     * is acknowledged that has not reached the disk.
+     * @throws IOException If the file cannot be forced.
+     */
+    public void sync() throws IOException {
+        if(dirty){
+            try {
+                channel.force(false);
+            } catch(IOException e){
+                syncFailed = true;
+                throw e;
+            }
+            dirty = false;
+            syncFailed = false;
+        }
+    }
+
+    /**
+     * @return true if the last sync failed and no force has succeeded since.
+     */
+    public boolean isSyncFailed() {
+        return syncFailed;
+    }
+
+    /**
+     * @return the number of bytes in the segment.
+     */
+    public long size() throws IOException {
+        return channel.position();
+    }
+
+    /**
+     * Forces the segment to disk, whatever the policy, and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Passes every complete record of a segment to the handler, in the order they were written.
+     * @param file The segment file.
+     * @param handler The handler that applies each record.
+     * @return the length of the valid prefix of the segment, which ends before the first torn record.
+     * @throws IOException If the file cannot be read or the handler fails.
+     */
+    public static long replay(Path file, RecordHandler handler) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while(true){
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if(length <= 0 || length > MAX_RECORD_BYTES){
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch(EOFException e){
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if((int) crc.getValue() != checksum){
+                    break;
+                }
+                try (DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload, 1, length - 1))) {
+                    handler.accept(payload[0], fields);
+                }
+                valid += HEADER_BYTES + length;
+            }
+        }
+        return valid;
+    }
+}
@@ -1,4 +1,7 @@
 import Controller.SocialMediaController;
+import DAO.Storage;
+import Service.AccountService;
+import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
 /**
@@ -7,6 +10,13 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
+        if(!Storage.isMemory()){
+            ConnectionUtil.migrate();
+        }
+        int hashed = new AccountService().hashPlaintextPasswords();
+        if(hashed > 0){
+            System.out.println("Hashed " + hashed + " plaintext passwords");
+        }
         SocialMediaController controller = new SocialMediaController();
         Javalin app = controller.startAPI();
         app.start(8080);
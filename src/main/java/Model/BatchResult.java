@@ -0,0 +1,114 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one item of a bulk request. Results are reported in the same
+ * order as the items of the request.
+ *
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    /**
+     * The position of the item in the request array, starting at 0.
+     */
+    public int index;
+    /**
+     * Whether the item was applied.
+     */
+    public boolean success;
+    /**
+     * The created or deleted message, if the item was applied.
+     */
+    public Message message;
+    /**
+     * Why the item was not applied, if it was not.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public BatchResult(){
+    }
+    /**
+     * @param index
+     * @param message the applied message, or null if the item failed.
+     * @param error the reason the item failed, used only when message is null.
+     */
+    public BatchResult(int index, Message message, String error) {
+        this.index = index;
+        this.success = message != null;
+        this.message = message;
+        this.error = message != null ? null : error;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return success
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param success
+     */
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "index=" + index +
+                ", success=" + success +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
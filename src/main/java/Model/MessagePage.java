@@ -0,0 +1,72 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of messages returned by a paginated list request.
+ *
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in the order of the list they come from: by message_id for a paginated list,
+     * or by time_posted_epoch and then message_id for a time window.
+     */
+    public List<Message> items;
+    /**
+     * An opaque cursor that fetches the page after this one, or null if this is the last page.
+     */
+    public String next;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessagePage(){
+    }
+    /**
+     * @param items
+     * @param next
+     */
+    public MessagePage(List<Message> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return items
+     */
+    public List<Message> getItems() {
+        return items;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param items
+     */
+    public void setItems(List<Message> items) {
+        this.items = items;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return next
+     */
+    public String getNext() {
+        return next;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param next
+     */
+    public void setNext(String next) {
+        this.next = next;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "items=" + items +
+                ", next='" + next + '\'' +
+                '}';
+    }
+}
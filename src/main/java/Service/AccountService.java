@@ -1,19 +1,78 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 import DAO.AccountDao;
+import DAO.Storage;
 import Model.Account;
+import Util.Bulkhead;
+import Util.ConcurrentBitSet;
+import Util.PasswordHasher;
+import Util.ScalableBloomFilter;
 
 /**
  * Service class for managing user accounts.
  */
 public class AccountService {
+    /**
+     * Number of accounts the username filter is sized for before it has to grow. Can be overridden with
+     * -Daccount.usernameFilter.expectedAccounts.
+     */
+    private static final int EXPECTED_ACCOUNTS = Integer.getInteger("account.usernameFilter.expectedAccounts", 100_000);
+    /**
+     * Target false-positive rate of the username filter. Can be overridden with
+     * -Daccount.usernameFilter.falsePositiveRate.
+     */
+    private static final double FALSE_POSITIVE_RATE =
+            Double.parseDouble(System.getProperty("account.usernameFilter.falsePositiveRate", "0.01"));
+
+    /**
+     * PBKDF2 iterations for new password hashes. Stored hashes with fewer iterations are upgraded at the next
+     * successful login. Can be overridden with -Daccount.password.iterations.
+     */
+    private static final int PASSWORD_ITERATIONS = Integer.getInteger("account.password.iterations", 600_000);
+
+    /**
+     * Runs password hashing and verification, one task per core so hashing never has more CPU than the
+     * machine has, and a bounded queue so that a login flood is shed instead of queueing behind itself. Shared
+     * by every AccountService. The queue size can be overridden with -Daccount.password.queueSize.
+     */
+    private static final Bulkhead PASSWORD_BULKHEAD = new Bulkhead("password",
+            Runtime.getRuntime().availableProcessors(),
+            Integer.getInteger("account.password.queueSize", 4 * Runtime.getRuntime().availableProcessors()));
+
+    private static final PasswordHasher PASSWORD_HASHER = new PasswordHasher(PASSWORD_ITERATIONS);
+
+    /**
+     * Hash verified when the username does not exist, so a failed login takes as long whether or not the
+     * account exists.
+     */
+    private static final String MISSING_ACCOUNT_HASH = PASSWORD_HASHER.hash("missing account");
+
     private AccountDao accountDao;
 
+    /**
+     * IDs of the accounts known to exist, loaded at construction and updated on registration. Accounts are
+     * never deleted, so a hit can be trusted without asking the database; the foreign key on message.posted_by
+     * remains the final check.
+     */
+    private final ConcurrentBitSet accountIds = new ConcurrentBitSet(1024);
+
+    /**
+     * Bloom filter of registered usernames. Only usernames it reports as possibly taken are checked against
+     * the database before insert; for the rest the unique constraint on account.username is the check.
+     */
+    private final ScalableBloomFilter usernames = new ScalableBloomFilter(EXPECTED_ACCOUNTS, FALSE_POSITIVE_RATE);
+
     /**
      * Default constructor that initializes the AccountDao.
      */
     public AccountService(){
-        this.accountDao = new AccountDao();
+        this(Storage.accountDao());
     }
 
     /**
@@ -22,28 +81,116 @@ public class AccountService {
      */
     public AccountService(AccountDao accountDao){
         this.accountDao = accountDao;
+        this.accountDao.loadAccountIds(this.accountIds::add);
+        this.accountDao.loadUsernames(this.usernames::put);
     }
 
     /**
      * Registers a new user account if the username is not blank, the password length is at least 4 characters, 
-     * and the username does not already exist.
+     * and the username does not already exist. The existence check only goes to the data store when the
+     * username filter says the name may be taken; otherwise the insert is attempted directly and a duplicate
+     * is rejected by the unique constraint. Only a hash of the password is stored.
      * @param account The account information to be registered.
      * @return The registered Account object if successful, or null if the registration failed.
+     * @throws RejectedExecutionException If the password hashing queue is full.
      */
     public Account registerUser(Account account){
-        if(account.username.isBlank() || account.password.length() < 4 || this.accountDao.isUser(account.username)){
+        if(account.username.isBlank() || account.password.length() < 4){
+            return null;
+        }
+        if(this.usernames.mightContain(account.username) && this.accountDao.isUser(account.username)){
             return null;
         }
-        return this.accountDao.registerUser(account);
+        String hash = hashPassword(account.password);
+        Account registered = this.accountDao.registerUser(new Account(account.username, hash));
+        if(registered == null){
+            return null;
+        }
+        this.accountIds.add(registered.account_id);
+        this.usernames.put(registered.username);
+        return new Account(registered.account_id, registered.username, account.password);
     }
 
     /**
-     * Verifies the account details by checking the provided account information against the data store.
+     * @return the username filter, for reading its fill ratio and expected false-positive rate.
+     */
+    public ScalableBloomFilter getUsernameFilter(){
+        return this.usernames;
+    }
+
+    /**
+     * Verifies the account details by looking the account up by username and checking the password against
+     * the stored hash. A legacy plaintext password that matches, or a hash made with fewer iterations than
+     * the current work factor, is replaced with a new hash.
      * @param account The account details to verify.
      * @return The verified Account object if the details are correct, or null if they are incorrect.
+     * @throws RejectedExecutionException If the password hashing queue is full.
      */
     public Account verifyAccountDetails(Account account){
-        return this.accountDao.verifyAccountDetails(account);
+        if(account.username == null || account.password == null){
+            return null;
+        }
+        Account stored = this.accountDao.getAccount(account.username);
+        if(stored == null){
+            onPasswordBulkhead(() -> PASSWORD_HASHER.verify(account.password, MISSING_ACCOUNT_HASH));
+            return null;
+        }
+        boolean hashed = PasswordHasher.isHash(stored.password);
+        boolean verified = hashed
+                ? onPasswordBulkhead(() -> PASSWORD_HASHER.verify(account.password, stored.password))
+                : PasswordHasher.matchesPlaintext(account.password, stored.password);
+        if(!verified){
+            return null;
+        }
+        if(!hashed || PASSWORD_HASHER.needsRehash(stored.password)){
+            this.accountDao.updatePassword(stored.account_id, stored.password, hashPassword(account.password));
+        }
+        return new Account(stored.account_id, stored.username, account.password);
+    }
+
+    /**
+     * Replaces every password still stored in plaintext with its hash. Logins upgrade their own row, so this
+     * is only needed to stop keeping plaintext for accounts that do not log in. Hashes on the calling thread,
+     * so it is meant for startup or maintenance rather than a request.
+     * @return The number of accounts updated.
+     */
+    public int hashPlaintextPasswords(){
+        List<Account> plaintext = new ArrayList<>();
+        this.accountDao.loadPlaintextAccounts(PasswordHasher.PREFIX, plaintext::add);
+        int updated = 0;
+        for(Account account : plaintext){
+            String hash = PASSWORD_HASHER.hash(account.password);
+            if(this.accountDao.updatePassword(account.account_id, account.password, hash)){
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @return the bulkhead that password hashing runs on, for reporting its queue depth and rejections.
+     */
+    public static Bulkhead getPasswordBulkhead(){
+        return PASSWORD_BULKHEAD;
+    }
+
+    private static String hashPassword(String password){
+        return onPasswordBulkhead(() -> PASSWORD_HASHER.hash(password));
+    }
+
+    /**
+     * Runs CPU-heavy password work on the password bulkhead and waits for the result.
+     * @throws RejectedExecutionException If the bulkhead's queue is full.
+     */
+    private static <T> T onPasswordBulkhead(Callable<T> task){
+        try {
+            return PASSWORD_BULKHEAD.submit(task).join();
+        } catch(CompletionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -56,11 +203,20 @@ public class AccountService {
     }
 
     /**
-     * Checks if a user with the given ID exists in the data store.
+     * Checks if a user with the given ID exists. Known IDs are answered from memory; only unknown IDs, which
+     * are rare on the normal write path, are checked against the data store in case the account was created
+     * by another process.
      * @param posted_by The ID of the user to check.
      * @return true if the user exists, false otherwise.
      */
     public boolean isUser(int posted_by) {
-        return this.accountDao.isUser(posted_by);
+        if(this.accountIds.contains(posted_by)){
+            return true;
+        }
+        if(posted_by > 0 && this.accountDao.isUser(posted_by)){
+            this.accountIds.add(posted_by);
+            return true;
+        }
+        return false;
     }
 } 
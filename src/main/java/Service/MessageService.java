@@ -1,23 +1,157 @@
 package Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import DAO.MessageDao;
+import DAO.Storage;
 import Model.Message;
+import Model.MessagePage;
+import Util.PageCursor;
+import Util.SearchIndex;
 
 /**
  * Service class for managing messages.
  */
 public class MessageService {
+    /**
+     * Page size used when a paginated request does not specify a limit.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    /**
+     * Largest page size the server will return, whatever the client asks for.
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+    /**
+     * Largest number of items sent to the data store in one batch by the bulk operations.
+     */
+    public static final int BATCH_CHUNK_SIZE = 500;
+    /**
+     * Largest number of message ids kept in the cache, hits and misses together. Can be overridden with
+     * -Dmessage.cache.maximumSize.
+     */
+    private static final long CACHE_MAXIMUM_SIZE = Long.getLong("message.cache.maximumSize", 10_000);
+    /**
+     * Largest number of messages held by the cached per-account timelines, summed over all accounts. Can be
+     * overridden with -Dmessage.timeline.maximumMessages.
+     */
+    private static final long TIMELINE_MAXIMUM_MESSAGES = Long.getLong("message.timeline.maximumMessages", 100_000);
+    /**
+     * Largest number of messages the search index holds; beyond it the oldest are dropped from the index, and
+     * only newer messages can be found. Can be overridden with -Dsearch.index.maximumMessages.
+     */
+    private static final int SEARCH_MAXIMUM_MESSAGES = Integer.getInteger("search.index.maximumMessages", 1_000_000);
+    /**
+     * Number of per-account change counters. Accounts share counters by ID modulo this number, so a change to
+     * one account can only make another account's list look changed, never the reverse.
+     */
+    private static final int ACCOUNT_VERSION_STRIPES = 1024;
+    /**
+     * Number of locks that order the in-memory effects of writes to the same message. Messages share locks by
+     * ID modulo this number.
+     */
+    private static final int WRITE_LOCK_STRIPES = 64;
+
     private MessageDao messageDao;
     private AccountService accountService;
 
+    /**
+     * Read-through cache of messages by ID, with W-TinyLFU eviction. An empty Optional records that the ID does
+     * not exist, so repeated lookups of missing messages do not reach the database either. Writes made through
+     * this service invalidate the affected entry after the database has been changed. Loads query the database
+     * outside the cache's locks and are checked against messageWrites, so a stale row cannot be left behind
+     * once the write has returned. Cached messages are shared and must not be mutated.
+     */
+    private final Cache<Integer, Optional<Message>> messageCache = Caffeine.newBuilder()
+            .maximumSize(CACHE_MAXIMUM_SIZE)
+            .recordStats()
+            .build();
+
+    /**
+     * Per-account timelines: each account's message IDs in ascending order, with the rows alongside, so a
+     * per-account read is an array walk with no query. Bounded by the total number of messages held; the
+     * accounts read least often are evicted and rebuilt from the database with one query on their next read.
+     * Writes made through this service are applied to the cached timeline after the database has been
+     * changed. A timeline is loaded outside the cache's locks and checked against timelineWrites, so a write
+     * either happens before the load's query, is applied on top of its result, or makes the load drop what it
+     * cached. Applying a write twice is harmless.
+     */
+    private final Cache<Integer, Timeline> timelineCache = Caffeine.newBuilder()
+            .maximumWeight(TIMELINE_MAXIMUM_MESSAGES)
+            .weigher((Integer account_id, Timeline timeline) -> timeline.weight())
+            .recordStats()
+            .build();
+
+    /**
+     * Full-text index over message_text, built from the message table when the service is created and kept up
+     * to date by the writes made through this service. Holds at most SEARCH_MAXIMUM_MESSAGES, the newest.
+     */
+    private final SearchIndex searchIndex = new SearchIndex(SEARCH_MAXIMUM_MESSAGES);
+
+    /**
+     * An update holds its message's lock from the database write until its row is in the timeline, a delete
+     * takes it to remove the row, and a create takes it to add the row. Two updates are then applied in the
+     * order they reached the database, and neither an update nor a create that the database saw before a
+     * delete can put the row back after the delete removed it.
+     * These are ReentrantLocks rather than monitors because an update holds one across its query, and a
+     * virtual thread blocked inside a monitor would pin its carrier.
+     */
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+    {
+        for(int i = 0; i < WRITE_LOCK_STRIPES; i++){
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Writes made through this service, counted per stripe of message IDs and per stripe of accounts. A write
+     * bumps its counters after the database has been changed and before it invalidates or patches a cached
+     * entry. A load reads the counter before its query and, if the counter has moved once its result is
+     * cached, removes that result, since the query may have missed the write.
+     */
+    private final AtomicLongArray messageWrites = new AtomicLongArray(WRITE_LOCK_STRIPES);
+    private final AtomicLongArray timelineWrites = new AtomicLongArray(ACCOUNT_VERSION_STRIPES);
+    /**
+     * Updates and deletes of any message, bumped with messageWrites. A create reads it before its insert, when
+     * the new ID is not known yet, to tell whether the row may have changed before it was cached.
+     */
+    private final AtomicLong updatesAndDeletes = new AtomicLong();
+
+    /**
+     * Change counters for the message lists, bumped after every create, update and delete made through this
+     * service: one for the list of all messages, and one per stripe of accounts for the per-account lists. A
+     * list's version is read before the list is, so a response is never tagged with a version newer than its
+     * contents. Like the cache, they only see writes made through this service.
+     */
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLongArray accountVersions = new AtomicLongArray(ACCOUNT_VERSION_STRIPES);
+    /**
+     * Distinguishes this service's counters from those of an earlier process, which started from zero too.
+     */
+    private final String versionEpoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
     /**
      * Default constructor that initializes MessageDao and AccountService.
      */
     public MessageService(){
-        this.messageDao = new MessageDao();
+        this.messageDao = Storage.messageDao();
         this.accountService = new AccountService();
+        buildSearchIndex();
     }
 
     /**
@@ -25,8 +159,9 @@ public class MessageService {
      * @param accountService The AccountService to be used by this service.
      */
     public MessageService(AccountService accountService){
-        this.messageDao = new MessageDao();
+        this.messageDao = Storage.messageDao();
         this.accountService = accountService;
+        buildSearchIndex();
     }
 
     /**
@@ -36,6 +171,7 @@ public class MessageService {
     public MessageService(MessageDao messageDao){
         this.messageDao = messageDao;
         this.accountService = new AccountService();
+        buildSearchIndex();
     }
 
     /**
@@ -46,6 +182,18 @@ public class MessageService {
     public MessageService(MessageDao messageDao, AccountService accountService){
         this.messageDao = messageDao;
         this.accountService = accountService;
+        buildSearchIndex();
+    }
+
+    /**
+     * Indexes every message, streaming the table so it is never held in memory as a whole.
+     */
+    private void buildSearchIndex(){
+        try {
+            this.messageDao.exportMessages(message -> this.searchIndex.put(message.message_id, message.message_text));
+        } catch(IOException e){
+            System.out.println(e.getMessage());
+        }
     }
 
     /**
@@ -55,19 +203,152 @@ public class MessageService {
      * @return The created Message object if successful, or null if creation failed.
      */
     public Message createMessage(Message message){
-        if(message.message_text.isBlank() || message.message_text.length() > 255 || !accountService.isUser(message.posted_by)){
+        if(!isValidNewMessage(message, false)){
+            return null;
+        }
+        return insertMessage(message);
+    }
+
+    /**
+     * Creates a new message on behalf of an authenticated account. posted_by is taken from the account rather
+     * than from the request, and is not looked up: the session token already proves the account exists.
+     * @param account_id The ID of the authenticated account.
+     * @param message The message to be created.
+     * @return The created Message object if successful, or null if creation failed.
+     */
+    public Message createMessage(int account_id, Message message){
+        if(message == null){
+            return null;
+        }
+        message.posted_by = account_id;
+        if(!isValidNewMessage(message, true)){
             return null;
         }
-        return this.messageDao.addMessage(message);
+        return insertMessage(message);
+    }
+
+    private Message insertMessage(Message message){
+        long writes = this.updatesAndDeletes.get();
+        Message added = this.messageDao.addMessage(message);
+        if(added != null){
+            cacheCreated(added, writes);
+            changed(added);
+        }
+        return added;
+    }
+
+    /**
+     * Puts a created message in the cache, its author's timeline and the search index, under the message's
+     * write lock like an update. If any message was updated or deleted since the insert began, this one may
+     * have been too before the lock was taken, so its row is read again and cached as it is now, or not at all
+     * if it is gone; otherwise a delete that ran in between would be undone in memory.
+     * @param writes The count of updatesAndDeletes read before the insert.
+     */
+    private void cacheCreated(Message added, long writes){
+        ReentrantLock lock = writeLock(added.message_id);
+        lock.lock();
+        try {
+            Message current = this.updatesAndDeletes.get() == writes ? added : this.messageDao.getMessage(added.message_id);
+            if(current != null){
+                this.messageCache.put(current.message_id, Optional.of(current));
+                putInTimeline(current);
+                this.searchIndex.put(current.message_id, current.message_text);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates several messages, applying the same rules as createMessage to each one. Valid messages are
+     * inserted with batched statements, at most BATCH_CHUNK_SIZE at a time.
+     * @param messages The messages to be created. Null entries are treated as invalid.
+     * @return A list of the same size and order, holding each created Message, or null where the message was
+     * invalid or could not be inserted.
+     */
+    public List<Message> createMessages(List<Message> messages){
+        return createMessages(messages, false);
+    }
+
+    /**
+     * Creates several messages on behalf of an authenticated account, applying the same rules as
+     * createMessage(int, Message) to each one.
+     * @param account_id The ID of the authenticated account, which becomes posted_by of every message.
+     * @param messages The messages to be created. Null entries are treated as invalid.
+     * @return A list of the same size and order, holding each created Message, or null where the message was
+     * invalid or could not be inserted.
+     */
+    public List<Message> createMessages(int account_id, List<Message> messages){
+        for(Message message : messages){
+            if(message != null){
+                message.posted_by = account_id;
+            }
+        }
+        return createMessages(messages, true);
+    }
+
+    private List<Message> createMessages(List<Message> messages, boolean authenticated){
+        List<Message> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>(Math.min(messages.size(), BATCH_CHUNK_SIZE));
+        List<Integer> positions = new ArrayList<>(Math.min(messages.size(), BATCH_CHUNK_SIZE));
+        for(int i = 0; i < messages.size(); i++){
+            results.add(null);
+            if(isValidNewMessage(messages.get(i), authenticated)){
+                valid.add(messages.get(i));
+                positions.add(i);
+            }
+            if(valid.size() == BATCH_CHUNK_SIZE || (i == messages.size() - 1 && !valid.isEmpty())){
+                long writes = this.updatesAndDeletes.get();
+                List<Message> added = this.messageDao.addMessages(valid);
+                for(int j = 0; j < added.size(); j++){
+                    Message message = added.get(j);
+                    if(message != null){
+                        cacheCreated(message, writes);
+                        changed(message);
+                        results.set(positions.get(j), message);
+                    }
+                }
+                valid.clear();
+                positions.clear();
+            }
+        }
+        return results;
     }
 
     /**
-     * Retrieves a message by its ID.
+     * A new message is valid if its text is not blank, does not exceed 255 characters, and its author exists.
+     * The author of an authenticated message is known to exist and is not checked.
+     */
+    private boolean isValidNewMessage(Message message, boolean authenticated){
+        return message != null && message.message_text != null && !message.message_text.isBlank()
+                && message.message_text.length() <= 255 && (authenticated || accountService.isUser(message.posted_by));
+    }
+
+    /**
+     * Retrieves a message by its ID. A miss is read from the database without holding any of the cache's
+     * locks, so concurrent misses never wait on each other or pin a virtual thread's carrier.
      * @param message_id The ID of the message to retrieve.
      * @return The Message object with the specified ID, or null if not found.
      */
     public Message getMessage(int message_id){
-        return this.messageDao.getMessage(message_id);
+        Optional<Message> cached = this.messageCache.getIfPresent(message_id);
+        if(cached != null){
+            return cached.orElse(null);
+        }
+        int stripe = writeStripe(message_id);
+        long writes = this.messageWrites.get(stripe);
+        Optional<Message> loaded = Optional.ofNullable(this.messageDao.getMessage(message_id));
+        if(this.messageCache.asMap().putIfAbsent(message_id, loaded) == null && this.messageWrites.get(stripe) != writes){
+            this.messageCache.asMap().remove(message_id, loaded);
+        }
+        return loaded.orElse(null);
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts for the message cache.
+     */
+    public CacheStats getCacheStats(){
+        return this.messageCache.stats();
     }
 
     /**
@@ -79,42 +360,411 @@ public class MessageService {
     }
 
     /**
-     * Retrieves all messages for a specific account.
+     * @return hit, miss, load and eviction counts for the per-account timelines.
+     */
+    public CacheStats getTimelineCacheStats(){
+        return this.timelineCache.stats();
+    }
+
+    /**
+     * Retrieves all messages for a specific account, ordered by message_id, from the account's timeline.
      * @param account_id The ID of the account whose messages to retrieve.
-     * @return A list of Message objects for the specified account.
+     * @return An unmodifiable list of Message objects for the specified account.
      */
     public List<Message> getAllMessages(int account_id){
-        return this.messageDao.getAllMessages(account_id);
+        return getTimeline(account_id).after(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves one page of all messages, ordered by message_id.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param limit The requested page size, clamped to MAX_PAGE_SIZE.
+     * @return A page of messages and the cursor for the next page.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public MessagePage getMessagePage(String cursor, int limit){
+        int pageSize = clampPageSize(limit);
+        List<Message> messages = this.messageDao.getMessagesAfter(PageCursor.decode(cursor), pageSize + 1);
+        return toPage(messages, pageSize);
+    }
+
+    /**
+     * Retrieves one page of the messages for a specific account, ordered by message_id. The page is cut from
+     * the account's timeline if it is cached, and otherwise read with one keyset query of at most a page, so a
+     * page never loads the whole account.
+     * @param account_id The ID of the account whose messages to retrieve.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param limit The requested page size, clamped to MAX_PAGE_SIZE.
+     * @return A page of messages and the cursor for the next page.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public MessagePage getMessagePage(int account_id, String cursor, int limit){
+        int pageSize = clampPageSize(limit);
+        int after = PageCursor.decode(cursor);
+        Timeline timeline = this.timelineCache.getIfPresent(account_id);
+        List<Message> messages = timeline != null
+                ? timeline.after(after, pageSize + 1)
+                : this.messageDao.getMessagesAfter(account_id, after, pageSize + 1);
+        return toPage(messages, pageSize);
     }
 
     /**
-     * Deletes a message by its ID. If the message exists, it is removed from the data store.
+     * Retrieves one page of the messages posted in a time window, ordered by time_posted_epoch and then
+     * message_id.
+     * @param from The earliest time_posted_epoch to include.
+     * @param to The time_posted_epoch to stop before.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param limit The requested page size, clamped to MAX_PAGE_SIZE.
+     * @return A page of messages and the cursor for the next page.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public MessagePage getMessagesBetween(long from, long to, String cursor, int limit){
+        int pageSize = clampPageSize(limit);
+        PageCursor.TimePosition after = PageCursor.decodeTime(cursor);
+        List<Message> messages = this.messageDao.getMessagesBetween(from, to, after.time_posted_epoch, after.message_id, pageSize + 1);
+        return toTimePage(messages, pageSize);
+    }
+
+    /**
+     * Retrieves one page of the messages a specific account posted in a time window, ordered by
+     * time_posted_epoch and then message_id.
+     * @param account_id The ID of the account whose messages to retrieve.
+     * @param from The earliest time_posted_epoch to include.
+     * @param to The time_posted_epoch to stop before.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @param limit The requested page size, clamped to MAX_PAGE_SIZE.
+     * @return A page of messages and the cursor for the next page.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public MessagePage getMessagesBetween(int account_id, long from, long to, String cursor, int limit){
+        int pageSize = clampPageSize(limit);
+        PageCursor.TimePosition after = PageCursor.decodeTime(cursor);
+        List<Message> messages = this.messageDao.getMessagesBetween(account_id, from, to, after.time_posted_epoch, after.message_id, pageSize + 1);
+        return toTimePage(messages, pageSize);
+    }
+
+    /**
+     * Searches message text. Only the index is consulted to find and rank the matches; their rows then come
+     * from the message cache. Messages older than the newest SEARCH_MAXIMUM_MESSAGES are not found.
+     * @param query The query, in the syntax described on SearchIndex.
+     * @param limit The largest number of messages to return, clamped to MAX_PAGE_SIZE.
+     * @return The best matching messages, best first.
+     * @throws IllegalArgumentException If the query has no terms or too many.
+     */
+    public List<Message> searchMessages(String query, int limit){
+        int[] ids = this.searchIndex.search(query, clampPageSize(limit));
+        List<Message> messages = new ArrayList<>(ids.length);
+        for(int id : ids){
+            Message message = getMessage(id);
+            if(message != null){
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return the search index, for reading its size.
+     */
+    public SearchIndex getSearchIndex(){
+        return this.searchIndex;
+    }
+
+    private static int clampPageSize(int limit){
+        if(limit <= 0){
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Builds a page from a query that fetched one row more than the page size, so the presence of that extra
+     * row tells us whether a next page exists without a separate count query.
+     */
+    private static MessagePage toPage(List<Message> messages, int pageSize){
+        if(messages.size() <= pageSize){
+            return new MessagePage(messages, null);
+        }
+        List<Message> items = messages.subList(0, pageSize);
+        return new MessagePage(items, PageCursor.encode(items.get(pageSize - 1).message_id));
+    }
+
+    /**
+     * Like toPage, for a list ordered by time, whose cursor carries the last message's time as well as its ID.
+     */
+    private static MessagePage toTimePage(List<Message> messages, int pageSize){
+        if(messages.size() <= pageSize){
+            return new MessagePage(messages, null);
+        }
+        List<Message> items = messages.subList(0, pageSize);
+        Message last = items.get(pageSize - 1);
+        return new MessagePage(items, PageCursor.encode(last.time_posted_epoch, last.message_id));
+    }
+
+    /**
+     * Streams every message to the given handler, one row at a time.
+     * @param handler The handler that receives each message. The instance passed to it is reused between rows.
+     * @throws IOException If the handler fails, which stops the export.
+     */
+    public void exportMessages(MessageDao.MessageHandler handler) throws IOException {
+        this.messageDao.exportMessages(handler);
+    }
+
+    /**
+     * Deletes a message by its ID. The row is deleted and returned by a single statement, unless the cache
+     * already knows the message does not exist.
      * @param message_id The ID of the message to delete.
      * @return The deleted Message object if it existed, or null if it did not exist.
      */
     public Message deleteMessage(int message_id){
-        Message message = this.messageDao.getMessage(message_id);
-        if(message != null){
-            this.messageDao.removeMessage(message_id);
-            return message;
+        if(isKnownMissing(message_id)){
+            return null;
+        }
+        Message deleted = this.messageDao.removeMessage(message_id);
+        invalidate(message_id);
+        if(deleted != null){
+            ReentrantLock lock = writeLock(message_id);
+            lock.lock();
+            try {
+                removeFromTimeline(deleted);
+                this.searchIndex.remove(message_id);
+            } finally {
+                lock.unlock();
+            }
+            changed(deleted);
         }
-        
-        return null;
+        return deleted;
     }   
 
+    /**
+     * Deletes several messages by ID, at most BATCH_CHUNK_SIZE per statement.
+     * @param message_ids The IDs of the messages to delete.
+     * @return A list of the same size and order, holding each deleted Message, or null where no message had
+     * that ID.
+     */
+    public List<Message> deleteMessages(int[] message_ids){
+        List<Message> results = new ArrayList<>(message_ids.length);
+        for(int from = 0; from < message_ids.length; from += BATCH_CHUNK_SIZE){
+            int[] chunk = Arrays.copyOfRange(message_ids, from, Math.min(message_ids.length, from + BATCH_CHUNK_SIZE));
+            Map<Integer, Message> deleted = new HashMap<>();
+            for(Message message : this.messageDao.removeMessages(chunk)){
+                deleted.put(message.message_id, message);
+            }
+            for(int message_id : chunk){
+                invalidate(message_id);
+                Message message = deleted.remove(message_id);
+                if(message != null){
+                    ReentrantLock lock = writeLock(message_id);
+                    lock.lock();
+                    try {
+                        removeFromTimeline(message);
+                        this.searchIndex.remove(message_id);
+                    } finally {
+                        lock.unlock();
+                    }
+                    changed(message);
+                }
+                results.add(message);
+            }
+        }
+        return results;
+    }
+
     /**
      * Updates a message by its ID. The message text must not be blank and must not exceed 255 characters.
+     * The text is validated before touching the data store, and the row is then updated and returned by a
+     * single statement.
      * @param message_id The ID of the message to update.
      * @param message The new message information to update.
      * @return The updated Message object if successful, or null if the message could not be updated.
      */
     public Message updateMessage(int message_id, Message message){
-        Message old = getMessage(message_id);
-        if(old == null || message.message_text.isBlank() || message.message_text.length() > 255){
+        if(message.message_text.isBlank() || message.message_text.length() > 255 || isKnownMissing(message_id)){
             return null;
         }
-        this.messageDao.updateMessage(message_id, message);
-        old.setMessage_text(message.message_text);
-        return old;
+        Message updated;
+        ReentrantLock lock = writeLock(message_id);
+        lock.lock();
+        try {
+            updated = this.messageDao.updateMessage(message_id, message);
+            invalidate(message_id);
+            if(updated != null){
+                putInTimeline(updated);
+                this.searchIndex.put(message_id, updated.message_text);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if(updated != null){
+            changed(updated);
+        }
+        return updated;
+    }
+
+    /**
+     * @return a version of the list of all messages that changes whenever a message is created, updated or
+     * deleted through this service. Answered from memory.
+     */
+    public String getVersion(){
+        return this.versionEpoch + "-" + this.version.get();
+    }
+
+    /**
+     * @param account_id The ID of the account whose list of messages is versioned.
+     * @return a version of the account's list of messages that changes whenever one of its messages is created,
+     * updated or deleted through this service. Answered from memory.
+     */
+    public String getVersion(int account_id){
+        return this.versionEpoch + "-" + account_id + "-" + this.accountVersions.get(stripe(account_id));
+    }
+
+    /**
+     * Records a change to a message, after the data store has been changed.
+     */
+    private void changed(Message message){
+        this.accountVersions.incrementAndGet(stripe(message.posted_by));
+        this.version.incrementAndGet();
+    }
+
+    private ReentrantLock writeLock(int message_id){
+        return this.writeLocks[writeStripe(message_id)];
+    }
+
+    private static int writeStripe(int message_id){
+        return Math.floorMod(message_id, WRITE_LOCK_STRIPES);
+    }
+
+    /**
+     * Drops a message's cache entry after a write to it, first counting the write so a load racing with it
+     * drops its result too.
+     */
+    private void invalidate(int message_id){
+        this.messageWrites.incrementAndGet(writeStripe(message_id));
+        this.updatesAndDeletes.incrementAndGet();
+        this.messageCache.invalidate(message_id);
+    }
+
+    private static int stripe(int account_id){
+        return Math.floorMod(account_id, ACCOUNT_VERSION_STRIPES);
+    }
+
+    /**
+     * @return the account's timeline, loaded with one query if it is not cached. The query runs outside the
+     * cache's locks, like getMessage's. A timeline too heavy for the cache is returned without being cached,
+     * since it would only evict the others on its way out.
+     */
+    private Timeline getTimeline(int account_id){
+        Timeline cached = this.timelineCache.getIfPresent(account_id);
+        if(cached != null){
+            return cached;
+        }
+        int stripe = stripe(account_id);
+        long writes = this.timelineWrites.get(stripe);
+        Timeline loaded = Timeline.of(this.messageDao.getAllMessages(account_id));
+        if(loaded.weight() > TIMELINE_MAXIMUM_MESSAGES){
+            return loaded;
+        }
+        if(this.timelineCache.asMap().putIfAbsent(account_id, loaded) == null && this.timelineWrites.get(stripe) != writes){
+            this.timelineCache.asMap().remove(account_id, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Adds a created message to, or replaces an updated message in, its author's cached timeline. A timeline
+     * that is not cached is left alone; its next load reads the change from the database.
+     */
+    private void putInTimeline(Message message){
+        this.timelineWrites.incrementAndGet(stripe(message.posted_by));
+        this.timelineCache.asMap().computeIfPresent(message.posted_by, (id, timeline) -> timeline.with(message));
+    }
+
+    private void removeFromTimeline(Message message){
+        this.timelineWrites.incrementAndGet(stripe(message.posted_by));
+        this.timelineCache.asMap().computeIfPresent(message.posted_by, (id, timeline) -> timeline.without(message.message_id));
+    }
+
+    /**
+     * @return true if the cache has recorded that no message has this ID.
+     */
+    private boolean isKnownMissing(int message_id){
+        Optional<Message> cached = this.messageCache.getIfPresent(message_id);
+        return cached != null && cached.isEmpty();
+    }
+
+    /**
+     * One account's messages in ascending message_id order: the IDs in a primitive array for binary search,
+     * and the rows at the same positions. Never modified once built; a change builds a new Timeline, so a
+     * reader walking an older one is not affected. The rows are shared and must not be mutated.
+     */
+    private static final class Timeline {
+        final int[] ids;
+        final Message[] rows;
+
+        private Timeline(int[] ids, Message[] rows){
+            this.ids = ids;
+            this.rows = rows;
+        }
+
+        static Timeline of(List<Message> messages){
+            Message[] rows = messages.toArray(new Message[0]);
+            Arrays.sort(rows, Comparator.comparingInt(message -> message.message_id));
+            int[] ids = new int[rows.length];
+            for(int i = 0; i < rows.length; i++){
+                ids[i] = rows[i].message_id;
+            }
+            return new Timeline(ids, rows);
+        }
+
+        /**
+         * @return the timeline's weight in the cache: one per message, plus one so an empty timeline costs
+         * something.
+         */
+        int weight(){
+            return this.ids.length + 1;
+        }
+
+        /**
+         * @return up to limit messages with an ID above after_id, as a view of the rows.
+         */
+        List<Message> after(int after_id, int limit){
+            int from = Arrays.binarySearch(this.ids, after_id);
+            from = from < 0 ? -from - 1 : from + 1;
+            int to = (int) Math.min(this.rows.length, (long) from + limit);
+            return Collections.unmodifiableList(Arrays.asList(this.rows).subList(from, to));
+        }
+
+        Timeline with(Message message){
+            int index = Arrays.binarySearch(this.ids, message.message_id);
+            if(index >= 0){
+                Message[] rows = this.rows.clone();
+                rows[index] = message;
+                return new Timeline(this.ids, rows);
+            }
+            index = -index - 1;
+            int[] ids = new int[this.ids.length + 1];
+            Message[] rows = new Message[this.rows.length + 1];
+            System.arraycopy(this.ids, 0, ids, 0, index);
+            System.arraycopy(this.rows, 0, rows, 0, index);
+            ids[index] = message.message_id;
+            rows[index] = message;
+            System.arraycopy(this.ids, index, ids, index + 1, this.ids.length - index);
+            System.arraycopy(this.rows, index, rows, index + 1, this.rows.length - index);
+            return new Timeline(ids, rows);
+        }
+
+        Timeline without(int message_id){
+            int index = Arrays.binarySearch(this.ids, message_id);
+            if(index < 0){
+                return this;
+            }
+            int[] ids = new int[this.ids.length - 1];
+            Message[] rows = new Message[this.rows.length - 1];
+            System.arraycopy(this.ids, 0, ids, 0, index);
+            System.arraycopy(this.rows, 0, rows, 0, index);
+            System.arraycopy(this.ids, index + 1, ids, index, ids.length - index);
+            System.arraycopy(this.rows, index + 1, rows, index, rows.length - index);
+            return new Timeline(ids, rows);
+        }
     }
-}
\ No newline at end of file
+}
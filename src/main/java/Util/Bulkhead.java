@@ -0,0 +1,247 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed number of worker threads with a bounded queue in front of them, used to keep one kind of blocking work
+ * from exhausting the threads another kind needs. When every worker is busy and the queue is full, submit()
+ * rejects the task at once instead of letting callers pile up, so the caller can shed the request.
+ *
+ * Idle workers exit after a minute, so a bulkhead that is no longer used does not hold threads.
+ *
+ * A bulkhead can instead start a new thread for every task, typically a virtual one, and bound how many run at
+ * once with a Semaphore. Tasks past that bound wait for a permit on their own thread rather than in a queue, and
+ * the same queue capacity limits how many may wait. A task blocked in JDBC then parks its virtual thread instead
+ * of holding one of a fixed set of platform workers.
+ */
+public class Bulkhead {
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int queueCapacity;
+	private final LongAdder rejections = new LongAdder();
+	/**
+	 * The fixed workers and their queue, or null if every task gets its own thread.
+	 */
+	private final ThreadPoolExecutor executor;
+	/**
+	 * Starts one thread per task, or null if the bulkhead has fixed workers.
+	 */
+	private final ExecutorService perTaskExecutor;
+	/**
+	 * One permit per task allowed to run at once on perTaskExecutor.
+	 */
+	private final Semaphore permits;
+	/**
+	 * Tasks running or waiting for a permit on perTaskExecutor.
+	 */
+	private final AtomicInteger admitted = new AtomicInteger();
+	private final LongAdder completed = new LongAdder();
+
+	/**
+	 * @param name used to name the worker threads and in toString().
+	 * @param threads the most tasks run at once.
+	 * @param queueCapacity the most tasks waiting for a worker before new ones are rejected.
+	 */
+	public Bulkhead(String name, int threads, int queueCapacity) {
+		if (threads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("invalid bulkhead sizing: threads=" + threads
+					+ ", queueCapacity=" + queueCapacity);
+		}
+		this.name = name;
+		this.maxConcurrent = threads;
+		this.queueCapacity = queueCapacity;
+		this.perTaskExecutor = null;
+		this.permits = null;
+		AtomicInteger created = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), task -> {
+					Thread thread = new Thread(task, name + "-bulkhead-" + created.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Creates a bulkhead that runs each task on a new thread from the given executor.
+	 * @param name used in toString().
+	 * @param maxConcurrent the most tasks run at once.
+	 * @param queueCapacity the most tasks waiting for a permit before new ones are rejected.
+	 * @param perTaskExecutor starts a new thread for every task, such as Executors.newVirtualThreadPerTaskExecutor().
+	 */
+	public Bulkhead(String name, int maxConcurrent, int queueCapacity, ExecutorService perTaskExecutor) {
+		if (maxConcurrent < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("invalid bulkhead sizing: maxConcurrent=" + maxConcurrent
+					+ ", queueCapacity=" + queueCapacity);
+		}
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.queueCapacity = queueCapacity;
+		this.executor = null;
+		this.perTaskExecutor = perTaskExecutor;
+		this.permits = new Semaphore(maxConcurrent, true);
+	}
+
+	/**
+	 * Creates a bulkhead that runs each task on its own virtual thread.
+	 * @param name used in toString().
+	 * @param maxConcurrent the most tasks run at once.
+	 * @param queueCapacity the most tasks waiting for a permit before new ones are rejected.
+	 * @return the bulkhead.
+	 * @throws IllegalStateException if the running JDK has no virtual threads.
+	 */
+	public static Bulkhead virtual(String name, int maxConcurrent, int queueCapacity) {
+		return new Bulkhead(name, maxConcurrent, queueCapacity, VirtualThreadPool.newPerTaskExecutor());
+	}
+
+	/**
+	 * Queues a task to run on one of the bulkhead's workers.
+	 * @param task the work to run.
+	 * @return a future completed with the task's result, or exceptionally with whatever the task threw.
+	 * @throws RejectedExecutionException if the queue is full or the bulkhead has been shut down.
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		if (executor == null) {
+			return submitPerTask(task);
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					result.complete(task.call());
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejections.increment();
+			throw e;
+		}
+		return result;
+	}
+
+	private <T> CompletableFuture<T> submitPerTask(Callable<T> task) {
+		if (admitted.incrementAndGet() > maxConcurrent + queueCapacity || perTaskExecutor.isShutdown()) {
+			admitted.decrementAndGet();
+			rejections.increment();
+			throw new RejectedExecutionException("bulkhead " + name + " is full");
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			perTaskExecutor.execute(() -> {
+				T value = null;
+				Throwable failure = null;
+				boolean acquired = false;
+				try {
+					permits.acquire();
+					acquired = true;
+					value = task.call();
+				} catch (Throwable t) {
+					failure = t;
+				} finally {
+					if (acquired) {
+						permits.release();
+						completed.increment();
+					}
+					admitted.decrementAndGet();
+				}
+				if (failure == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(failure);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			admitted.decrementAndGet();
+			rejections.increment();
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the name of this bulkhead.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a worker.
+	 */
+	public int getQueueDepth() {
+		if (executor == null) {
+			return Math.max(0, admitted.get() - getActiveCount());
+		}
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the most tasks that can wait for a worker.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return the number of workers currently running a task.
+	 */
+	public int getActiveCount() {
+		if (executor == null) {
+			return maxConcurrent - permits.availablePermits();
+		}
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return the most tasks run at once.
+	 */
+	public int getMaxThreads() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * @return the number of tasks rejected because the queue was full.
+	 */
+	public long getRejectedCount() {
+		return rejections.sum();
+	}
+
+	/**
+	 * @return the number of tasks that have finished running.
+	 */
+	public long getCompletedCount() {
+		if (executor == null) {
+			return completed.sum();
+		}
+		return executor.getCompletedTaskCount();
+	}
+
+	/**
+	 * Stops accepting tasks. Tasks already queued still run.
+	 */
+	public void shutdown() {
+		if (executor == null) {
+			perTaskExecutor.shutdown();
+		} else {
+			executor.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Bulkhead [name=" + name + ", active=" + getActiveCount() + ", maxThreads=" + getMaxThreads()
+				+ ", queueDepth=" + getQueueDepth() + ", queueCapacity=" + queueCapacity + ", rejected="
+				+ getRejectedCount() + ", completed=" + getCompletedCount() + "]";
+	}
+}
@@ -0,0 +1,67 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A growable set of non-negative ints stored as a bitset, one bit per value. Lookups are lock-free and do not
+ * allocate; additions are serialized and copy the words into a larger array when the set has to grow.
+ *
+ * Suited to dense ids such as auto-increment keys, where it costs one bit per id up to the largest id added.
+ */
+public class ConcurrentBitSet {
+
+	private volatile AtomicLongArray words;
+
+	/**
+	 * @param initialCapacity the number of values that fit before the set has to grow.
+	 */
+	public ConcurrentBitSet(int initialCapacity) {
+		this.words = new AtomicLongArray(Math.max(1, (initialCapacity + 63) >>> 6));
+	}
+
+	/**
+	 * @param value the value to look up.
+	 * @return true if the value has been added.
+	 */
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+		AtomicLongArray current = words;
+		int index = value >>> 6;
+		return index < current.length() && (current.get(index) & (1L << value)) != 0;
+	}
+
+	/**
+	 * @param value the non-negative value to add.
+	 */
+	public synchronized void add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("negative value: " + value);
+		}
+		int index = value >>> 6;
+		AtomicLongArray current = words;
+		if (index >= current.length()) {
+			int length = Math.max(index + 1, current.length() * 2);
+			AtomicLongArray grown = new AtomicLongArray(length);
+			for (int i = 0; i < current.length(); i++) {
+				grown.set(i, current.get(i));
+			}
+			words = grown;
+			current = grown;
+		}
+		current.set(index, current.get(index) | (1L << value));
+	}
+
+	/**
+	 * @return the number of values in the set.
+	 */
+	public int size() {
+		AtomicLongArray current = words;
+		int count = 0;
+		for (int i = 0; i < current.length(); i++) {
+			count += Long.bitCount(current.get(i));
+		}
+		return count;
+	}
+}
@@ -0,0 +1,452 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of JDBC connections. Physical connections are created from the given DataSource and handed
+ * out wrapped in a proxy whose close() returns the connection to the pool instead of closing it.
+ *
+ * The pool never holds more than maxSize physical connections: every connection is counted before it is
+ * opened, whether by a caller or by the housekeeper topping up the idle list, and uncounted once it is closed.
+ * Callers that cannot get a connection within
+ * the checkout timeout receive an SQLException. Idle connections are validated before they are handed out,
+ * and any connection held longer than the leak threshold is reported together with the stack of the code
+ * that borrowed it.
+ */
+public class ConnectionPool {
+
+	private final DataSource dataSource;
+	private final int minIdle;
+	private final int maxSize;
+	private final long checkoutTimeoutMillis;
+	private final long leakThresholdMillis;
+	private final int validationTimeoutSeconds;
+	private final int statementCacheSize;
+
+	/**
+	 * One permit per connection the pool is allowed to hand out. Threads queued on this semaphore are the
+	 * waiters reported by the pool metrics.
+	 */
+	private final Semaphore permits;
+	/**
+	 * Physical connections open or being opened, checked out and idle alike. Never exceeds maxSize.
+	 */
+	private final AtomicInteger open = new AtomicInteger();
+	private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+	private final Map<Connection, Checkout> checkedOut = new ConcurrentHashMap<>();
+	private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService housekeeper;
+
+	private final LongAdder checkouts = new LongAdder();
+	private final LongAdder checkoutWaitNanos = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder leaksReported = new LongAdder();
+	private final LongAdder statementCacheHits = new LongAdder();
+	private final LongAdder statementCacheMisses = new LongAdder();
+
+	/**
+	 * Creates the pool and opens minIdle connections up front.
+	 * @param dataSource the source of physical connections.
+	 * @param minIdle the number of idle connections the pool tries to keep open.
+	 * @param maxSize the maximum number of connections open at once.
+	 * @param checkoutTimeoutMillis how long getConnection() waits for a free connection.
+	 * @param leakThresholdMillis how long a connection may be held before it is reported as a leak, or 0 to disable.
+	 * @param validationTimeoutSeconds the timeout passed to Connection.isValid() when validating on borrow.
+	 */
+	public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long checkoutTimeoutMillis,
+			long leakThresholdMillis, int validationTimeoutSeconds) {
+		this(dataSource, minIdle, maxSize, checkoutTimeoutMillis, leakThresholdMillis, validationTimeoutSeconds, 0);
+	}
+
+	/**
+	 * Creates the pool and opens minIdle connections up front. Each connection keeps up to statementCacheSize
+	 * prepared statements open for reuse.
+	 * @param dataSource the source of physical connections.
+	 * @param minIdle the number of idle connections the pool tries to keep open.
+	 * @param maxSize the maximum number of connections open at once.
+	 * @param checkoutTimeoutMillis how long getConnection() waits for a free connection.
+	 * @param leakThresholdMillis how long a connection may be held before it is reported as a leak, or 0 to disable.
+	 * @param validationTimeoutSeconds the timeout passed to Connection.isValid() when validating on borrow.
+	 * @param statementCacheSize the number of prepared statements cached per connection, or 0 to disable.
+	 */
+	public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long checkoutTimeoutMillis,
+			long leakThresholdMillis, int validationTimeoutSeconds, int statementCacheSize) {
+		if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+		}
+		this.dataSource = dataSource;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-housekeeper");
+			t.setDaemon(true);
+			return t;
+		});
+		fillIdle();
+		long period = leakThresholdMillis > 0 ? Math.max(leakThresholdMillis / 2, 100) : 5000;
+		housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, waiting up to the checkout timeout for one to become free.
+	 * The returned connection must be closed to give it back.
+	 * @return a validated connection.
+	 * @throws SQLException if no connection became free in time or a new one could not be opened.
+	 */
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new SQLException("Timed out after " + checkoutTimeoutMillis
+						+ "ms waiting for a connection (active=" + getActiveConnections() + ", max=" + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
+		Connection physical;
+		try {
+			physical = takeValidConnection();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		checkoutWaitNanos.add(System.nanoTime() - start);
+		checkouts.increment();
+		Checkout checkout = new Checkout(physical, leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null);
+		checkedOut.put(physical, checkout);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, checkout);
+	}
+
+	/**
+	 * Polls idle connections until one passes validation, falling back to opening a new one. If all maxSize
+	 * connections are already open, one of them is on its way to the idle list, for example from the
+	 * housekeeper, so the caller waits for it until the checkout timeout.
+	 */
+	private Connection takeValidConnection() throws SQLException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(checkoutTimeoutMillis);
+		while (true) {
+			Connection connection = idle.pollFirst();
+			if (connection == null) {
+				connection = openConnection();
+				if (connection != null) {
+					return connection;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					timeouts.increment();
+					throw new SQLException("Timed out after " + checkoutTimeoutMillis
+							+ "ms waiting for a connection (open=" + open.get() + ", max=" + maxSize + ")");
+				}
+				try {
+					connection = idle.pollFirst(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)),
+							TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a connection", e);
+				}
+				if (connection == null) {
+					continue;
+				}
+			}
+			if (isUsable(connection)) {
+				return connection;
+			}
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Opens a physical connection if fewer than maxSize are open.
+	 * @return the new connection, or null if maxSize connections are already open.
+	 */
+	private Connection openConnection() throws SQLException {
+		int count;
+		do {
+			count = open.get();
+			if (count >= maxSize) {
+				return null;
+			}
+		} while (!open.compareAndSet(count, count + 1));
+		try {
+			return dataSource.getConnection();
+		} catch (SQLException | RuntimeException e) {
+			open.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private boolean isUsable(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives a physical connection back to the pool. Connections left in a non-default state are reset, and
+	 * ones that cannot be reset are discarded.
+	 */
+	private void release(Connection physical) {
+		checkedOut.remove(physical);
+		try {
+			StatementCache statements = statementCaches.get(physical);
+			if (statements != null) {
+				statements.reset();
+			}
+			if (!physical.getAutoCommit()) {
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			physical.clearWarnings();
+			if (physical.isClosed()) {
+				closeQuietly(physical);
+			} else {
+				idle.offerFirst(physical);
+			}
+		} catch (SQLException e) {
+			closeQuietly(physical);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Reports leaked connections and tops the idle list back up to minIdle.
+	 */
+	private void housekeep() {
+		if (leakThresholdMillis > 0) {
+			long now = System.currentTimeMillis();
+			for (Checkout checkout : checkedOut.values()) {
+				if (!checkout.reported && now - checkout.borrowedAt > leakThresholdMillis) {
+					checkout.reported = true;
+					leaksReported.increment();
+					System.err.println("Possible connection leak: connection held for " + (now - checkout.borrowedAt)
+							+ "ms by thread " + checkout.borrower);
+					checkout.origin.printStackTrace();
+				}
+			}
+		}
+		fillIdle();
+	}
+
+	private void fillIdle() {
+		while (idle.size() < minIdle) {
+			try {
+				Connection connection = openConnection();
+				if (connection == null) {
+					return;
+				}
+				idle.offerLast(connection);
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private void closeQuietly(Connection connection) {
+		StatementCache statements = statementCaches.remove(connection);
+		if (statements != null) {
+			statements.closeAll();
+		}
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		} finally {
+			open.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Closes all idle connections and stops the housekeeping thread. Connections still checked out are closed
+	 * when they are returned.
+	 */
+	public void shutdown() {
+		housekeeper.shutdownNow();
+		Connection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * @return the number of connections currently checked out.
+	 */
+	public int getActiveConnections() {
+		return checkedOut.size();
+	}
+
+	/**
+	 * @return the number of physical connections open, checked out and idle alike.
+	 */
+	public int getOpenConnections() {
+		return open.get();
+	}
+
+	/**
+	 * @return the number of open connections waiting in the pool.
+	 */
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	/**
+	 * @return an estimate of the number of threads waiting for a connection.
+	 */
+	public int getThreadsAwaitingConnection() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * @return the average time spent in getConnection(), in microseconds.
+	 */
+	public double getAverageCheckoutWaitMicros() {
+		long count = checkouts.sum();
+		return count == 0 ? 0 : checkoutWaitNanos.sum() / 1000.0 / count;
+	}
+
+	/**
+	 * @return the total number of successful checkouts.
+	 */
+	public long getTotalCheckouts() {
+		return checkouts.sum();
+	}
+
+	/**
+	 * @return the number of getConnection() calls that timed out.
+	 */
+	public long getCheckoutTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * @return the number of connections that have been reported as leaked.
+	 */
+	public long getLeaksReported() {
+		return leaksReported.sum();
+	}
+
+	/**
+	 * @return the number of prepareStatement calls served from a connection's statement cache.
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits.sum();
+	}
+
+	/**
+	 * @return the number of prepareStatement calls that had to prepare a new statement.
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.sum();
+	}
+
+	/**
+	 * @return the fraction of prepareStatement calls served from the statement cache.
+	 */
+	public double getStatementCacheHitRate() {
+		long hits = statementCacheHits.sum();
+		long total = hits + statementCacheMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the maximum number of connections this pool will open.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool{" +
+				"active=" + getActiveConnections() +
+				", idle=" + getIdleConnections() +
+				", waiters=" + getThreadsAwaitingConnection() +
+				", avgCheckoutWaitMicros=" + getAverageCheckoutWaitMicros() +
+				", timeouts=" + getCheckoutTimeouts() +
+				", leaks=" + getLeaksReported() +
+				", statementCacheHitRate=" + getStatementCacheHitRate() +
+				'}';
+	}
+
+	/**
+	 * Tracks a single checkout and acts as the invocation handler of the connection proxy handed to the caller.
+	 * Once the proxy is closed every further call fails, so a stale reference cannot touch a connection that
+	 * has since been given to someone else.
+	 */
+	private class Checkout implements InvocationHandler {
+		private final Connection physical;
+		private final Throwable origin;
+		private final String borrower = Thread.currentThread().getName();
+		private final long borrowedAt = System.currentTimeMillis();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private volatile boolean reported;
+
+		Checkout(Connection physical, Throwable origin) {
+			this.physical = physical;
+			this.origin = origin;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (closed.compareAndSet(false, true)) {
+						release(physical);
+					}
+					return null;
+				case "isClosed":
+					return closed.get() || physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Pooled" + physical;
+				default:
+					break;
+			}
+			if (closed.get()) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+			if (statementCacheSize > 0 && method.getName().equals("prepareStatement")) {
+				return statementCaches.computeIfAbsent(physical,
+						c -> new StatementCache(c, statementCacheSize, statementCacheHits, statementCacheMisses))
+						.prepare(method, args);
+			}
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -1,9 +1,10 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ServiceLoader;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -31,43 +32,106 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Smallest number of idle connections the pool keeps open. Can be overridden with -Ddb.pool.minIdle.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static int minIdle = Integer.getInteger("db.pool.minIdle", 2);
+	/**
+	 * Largest number of connections the pool will open. Can be overridden with -Ddb.pool.maxSize.
+	 */
+	private static int maxSize = Integer.getInteger("db.pool.maxSize", 10);
+	/**
+	 * How long a caller waits for a free connection before giving up. Can be overridden with
+	 * -Ddb.pool.checkoutTimeoutMillis.
+	 */
+	private static long checkoutTimeoutMillis = Long.getLong("db.pool.checkoutTimeoutMillis", 5000);
+	/**
+	 * How long a connection may be held before it is reported as leaked, 0 disables leak detection. Can be
+	 * overridden with -Ddb.pool.leakThresholdMillis.
+	 */
+	private static long leakThresholdMillis = Long.getLong("db.pool.leakThresholdMillis", 10000);
+
+	/**
+	 * Number of prepared statements each pooled connection keeps for reuse, 0 disables the cache. Can be
+	 * overridden with -Ddb.pool.statementCacheSize.
+	 */
+	private static int statementCacheSize = Integer.getInteger("db.pool.statementCacheSize", 64);
+
+	/**
+	 * DataSource used by the pool to open physical connections.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded connection pool. Connections handed out by getConnection() go back to the pool when closed.
+	 */
+	private static ConnectionPool pool;
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * static initialization block to establish credentials for the DataSource and start the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource, minIdle, maxSize, checkoutTimeoutMillis, leakThresholdMillis, 1,
+				statementCacheSize);
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * Rebuilds state kept outside H2 after resetTestDatabase(). Implementations live with the tests and are
+	 * found with ServiceLoader, so nothing the app runs depends on the test reset.
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
+	public interface ResetHook {
+		/**
+		 * Called after the test database has been reset and migrated.
+		 */
+		void afterReset();
+	}
+
+	/**
+	 * @return an active connection to the database. The caller must close it to return it to the pool.
+	 * @throws SQLException if no connection became free within the checkout timeout, or a new one could not be
+	 *                      opened.
+	 */
+	public static Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
+
+	/**
+	 * @return the connection pool, for reading its live counters.
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Brings the schema up to date by applying any pending versioned migrations. This is run at startup and
+	 * never drops data.
+	 */
+	public static void migrate() {
+		try (Connection connection = getConnection()) {
+			new MigrationRunner().migrate(connection);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
-
-		return null;
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources and then apply the migrations on top of it. This will be
+	 * performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		try (Connection connection = getConnection();
+				FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+			RunScript.execute(connection, sqlReader);
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
+		migrate();
+		for (ResetHook hook : ServiceLoader.load(ResetHook.class)) {
+			hook.afterReset();
+		}
 	}
 }
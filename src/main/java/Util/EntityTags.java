@@ -0,0 +1,88 @@
+package Util;
+
+import Model.Message;
+
+/**
+ * Builds strong entity tags and evaluates If-None-Match headers against them, so a client polling an unchanged
+ * resource can be answered with 304 Not Modified and no body.
+ */
+public class EntityTags {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private EntityTags() {
+	}
+
+	/**
+	 * @param version an opaque version string.
+	 * @return the version as a quoted, strong entity tag.
+	 */
+	public static String of(String version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * Tags a message by a 64-bit FNV-1a hash of all of its fields, so the tag changes whenever the row does and
+	 * can be computed from a cached copy without reading the database.
+	 * @param message the message to tag.
+	 * @return a strong entity tag for the message.
+	 */
+	public static String of(Message message) {
+		return of(message, null);
+	}
+
+	/**
+	 * Tags a message as sent in a content coding. The encoded bytes differ from the plain ones, so each coding
+	 * needs its own strong tag.
+	 * @param message the message to tag.
+	 * @param coding the content coding of the response, or null if it is sent as it is.
+	 * @return a strong entity tag for the message in that coding.
+	 */
+	public static String of(Message message, String coding) {
+		long hash = FNV_OFFSET;
+		hash = mix(hash, message.message_id);
+		hash = mix(hash, message.posted_by);
+		hash = mix(hash, message.time_posted_epoch);
+		String text = message.message_text;
+		if (text != null) {
+			for (int i = 0; i < text.length(); i++) {
+				hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+			}
+		}
+		String tag = message.message_id + "-" + Long.toHexString(hash);
+		return of(coding == null ? tag : tag + "-" + coding);
+	}
+
+	/**
+	 * Evaluates an If-None-Match header with the weak comparison RFC 9110 prescribes for it.
+	 * @param ifNoneMatch the header value, or null if the request has none.
+	 * @param etag the current entity tag of the resource.
+	 * @return true if the client's copy is current and a 304 may be sent.
+	 */
+	public static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*")) {
+				return true;
+			}
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long mix(long hash, long value) {
+		for (int shift = 0; shift < 64; shift += 8) {
+			hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,94 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Map from non-negative int keys to values, for keys that are handed out densely from a counter, such as
+ * generated IDs. Values live in fixed-size pages indexed by the key's high bits, so a lookup is two array reads
+ * with no hashing and no boxing of the key.
+ *
+ * Reads are lock-free and see every completed write. Writes are serialized on the table.
+ */
+public class IntTable<T> {
+
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * Page directory. Replaced, never modified, when a page is added, so a reader that sees a page sees it
+	 * initialized.
+	 */
+	private volatile AtomicReferenceArray<T>[] pages = newDirectory(0);
+	/**
+	 * One more than the highest key ever stored, which bounds iteration.
+	 */
+	private volatile int limit;
+
+	/**
+	 * @param key the key to look up.
+	 * @return the value stored under the key, or null if there is none.
+	 */
+	public T get(int key) {
+		AtomicReferenceArray<T>[] pages = this.pages;
+		int page = key >>> PAGE_BITS;
+		if (key < 0 || page >= pages.length || pages[page] == null) {
+			return null;
+		}
+		return pages[page].get(key & PAGE_MASK);
+	}
+
+	/**
+	 * @param key the key to store under, which must not be negative.
+	 * @param value the value to store, or null to remove the key.
+	 * @return the value previously stored under the key, or null.
+	 */
+	public synchronized T put(int key, T value) {
+		if (key < 0) {
+			throw new IllegalArgumentException("negative key: " + key);
+		}
+		int page = key >>> PAGE_BITS;
+		AtomicReferenceArray<T>[] pages = this.pages;
+		if (page >= pages.length || pages[page] == null) {
+			if (value == null) {
+				return null;
+			}
+			pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length));
+			pages[page] = new AtomicReferenceArray<>(PAGE_SIZE);
+			this.pages = pages;
+		}
+		if (key >= limit && value != null) {
+			limit = key + 1;
+		}
+		return pages[page].getAndSet(key & PAGE_MASK, value);
+	}
+
+	/**
+	 * @param key the key to remove.
+	 * @return the value that was stored under the key, or null.
+	 */
+	public T remove(int key) {
+		return put(key, null);
+	}
+
+	/**
+	 * @return one more than the highest key ever stored; every key with a value is below it.
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * Removes every key.
+	 */
+	public synchronized void clear() {
+		pages = newDirectory(0);
+		limit = 0;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> AtomicReferenceArray<T>[] newDirectory(int size) {
+		return (AtomicReferenceArray<T>[]) new AtomicReferenceArray[size];
+	}
+}
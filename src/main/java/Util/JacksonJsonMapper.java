@@ -0,0 +1,155 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import Model.Account;
+import Model.BatchResult;
+import Model.Message;
+import Model.MessagePage;
+import io.javalin.http.Context;
+import io.javalin.http.ContentType;
+import io.javalin.json.JsonMapper;
+
+/**
+ * Application-wide JSON layer. A single ObjectMapper is configured once, and the readers and writers for the
+ * types the API exchanges are built up front so that no request pays for mapper construction. ObjectReader
+ * and ObjectWriter are immutable and safe to share between threads.
+ *
+ * An instance of this class is registered as Javalin's JsonMapper, so context.json(...) uses the same mapper.
+ */
+public class JacksonJsonMapper implements JsonMapper {
+
+	/**
+	 * The shared mapper. The output stream is left open after writing so Javalin can finish the response.
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	private static final JavaType MESSAGE_LIST_TYPE =
+			MAPPER.getTypeFactory().constructCollectionType(List.class, Message.class);
+
+	public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+	public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+	public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+	public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+	public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(MESSAGE_LIST_TYPE);
+	public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(MESSAGE_LIST_TYPE);
+	public static final ObjectWriter MESSAGE_PAGE_WRITER = MAPPER.writerFor(MessagePage.class);
+	/**
+	 * Writer for newline-delimited export. It neither flushes after each value nor adds its own separator, so
+	 * rows are batched in the generator buffer and the caller controls the line breaks.
+	 */
+	public static final ObjectWriter MESSAGE_NDJSON_WRITER = MESSAGE_WRITER
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+			.withRootValueSeparator((String) null);
+	/**
+	 * Writer for the per-item results of bulk requests, which are streamed as a JSON array as items are applied.
+	 */
+	public static final ObjectWriter BATCH_RESULT_WRITER = MAPPER.writerFor(BatchResult.class)
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	/**
+	 * Readers and writers for any other type that passes through Javalin, built on first use.
+	 */
+	private static final Map<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+	private static final Map<Type, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+	static {
+		READERS.put(Account.class, ACCOUNT_READER);
+		READERS.put(Message.class, MESSAGE_READER);
+		WRITERS.put(Account.class, ACCOUNT_WRITER);
+		WRITERS.put(Message.class, MESSAGE_WRITER);
+		WRITERS.put(MessagePage.class, MESSAGE_PAGE_WRITER);
+	}
+
+	/**
+	 * @return the shared ObjectMapper, for code that needs something not covered by the cached readers and writers.
+	 */
+	public static ObjectMapper getMapper() {
+		return MAPPER;
+	}
+
+	/**
+	 * Serializes a value straight into the response output stream, without building an intermediate String.
+	 * @param context The Javalin context whose response is written.
+	 * @param writer The writer for the value's type.
+	 * @param value The value to serialize.
+	 * @throws IOException If the value cannot be serialized or the response cannot be written.
+	 */
+	public static void writeJson(Context context, ObjectWriter writer, Object value) throws IOException {
+		context.contentType(ContentType.APPLICATION_JSON);
+		writer.writeValue(context.outputStream(), value);
+	}
+
+	/**
+	 * Deserializes the request body as a stream, without reading it into a String first.
+	 * @param context The Javalin context whose request body is read.
+	 * @param reader The reader for the expected type.
+	 * @return the deserialized value.
+	 * @throws IOException If the body is not valid JSON for the expected type.
+	 */
+	public static <T> T readJson(Context context, ObjectReader reader) throws IOException {
+		return reader.readValue(context.bodyInputStream());
+	}
+
+	private static ObjectReader readerFor(Type type) {
+		return READERS.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t)));
+	}
+
+	private static ObjectWriter writerFor(Type type) {
+		return WRITERS.computeIfAbsent(type, t -> MAPPER.writerFor(MAPPER.constructType(t)));
+	}
+
+	@Override
+	public String toJsonString(Object obj, Type type) {
+		if (obj instanceof String) {
+			return (String) obj;
+		}
+		try {
+			return writerFor(type).writeValueAsString(obj);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public InputStream toJsonStream(Object obj, Type type) {
+		try {
+			return new ByteArrayInputStream(writerFor(type).writeValueAsBytes(obj));
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public <T> T fromJsonString(String json, Type targetType) {
+		try {
+			return readerFor(targetType).readValue(json);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public <T> T fromJsonStream(InputStream json, Type targetType) {
+		try {
+			return readerFor(targetType).readValue(json);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import org.HdrHistogram.AtomicHistogram;
+
+/**
+ * Process-wide registry of request and query metrics, written out in the Prometheus text exposition format by
+ * scrape().
+ *
+ * Routes and DAO methods register their Route or Timer once, when the route is added or the DAO class is
+ * loaded, and keep the reference. Recording then only touches atomics and striped counters: no locks, no map
+ * lookups and no allocation, so the measurement does not add contention to the paths it measures. Latencies go
+ * into HDR histograms with two significant digits of precision up to one minute; longer values are recorded as
+ * one minute. A scrape reads the histograms while they are being written, so its quantiles can be off by the
+ * few values recorded during the scrape.
+ *
+ * Components that already keep their own statistics, such as the connection pool, are exposed through gauge()
+ * and counter(), which read the value only when scraped.
+ */
+public final class Metrics {
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	private static final long LOWEST_DISCERNIBLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+	private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+	private static final int MIN_STATUS = 100;
+	private static final int MAX_STATUS = 599;
+
+	private static final Map<String, Route> ROUTES = new ConcurrentSkipListMap<>();
+	private static final Map<String, Timer> QUERIES = new ConcurrentSkipListMap<>();
+	private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * @param method the HTTP method of the route.
+	 * @param path the path the route was registered with.
+	 * @return the metrics of the route, created on first use and shared by every server that registers it.
+	 */
+	public static Route route(String method, String path) {
+		String labels = "method=\"" + escape(method) + "\",route=\"" + escape(path) + "\"";
+		return ROUTES.computeIfAbsent(labels, Route::new);
+	}
+
+	/**
+	 * @param dao the name of the DAO class.
+	 * @param method the name of the DAO method; overloads need distinct names.
+	 * @return the timer of the DAO method, created on first use.
+	 */
+	public static Timer query(String dao, String method) {
+		String labels = "dao=\"" + escape(dao) + "\",method=\"" + escape(method) + "\"";
+		return QUERIES.computeIfAbsent(labels, Timer::new);
+	}
+
+	/**
+	 * Registers a value that can go up and down, read when the metrics are scraped. Registering the same name
+	 * and labels again replaces the earlier source.
+	 * @param name the metric name.
+	 * @param help the description written on the HELP line.
+	 * @param labels the label pairs in Prometheus syntax, such as pool="db", or an empty string.
+	 * @param value reads the current value.
+	 */
+	public static void gauge(String name, String help, String labels, DoubleSupplier value) {
+		register(name, "gauge", help, labels, value);
+	}
+
+	/**
+	 * Registers a monotonically increasing total kept elsewhere, read when the metrics are scraped. Registering
+	 * the same name and labels again replaces the earlier source.
+	 * @param name the metric name, which should end in _total.
+	 * @param help the description written on the HELP line.
+	 * @param labels the label pairs in Prometheus syntax, or an empty string.
+	 * @param value reads the current total.
+	 */
+	public static void counter(String name, String help, String labels, DoubleSupplier value) {
+		register(name, "counter", help, labels, value);
+	}
+
+	private static void register(String name, String type, String help, String labels, DoubleSupplier value) {
+		Family family = FAMILIES.computeIfAbsent(name, n -> new Family(type, help));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+		}
+		family.sources.put(labels, value);
+	}
+
+	/**
+	 * @return every registered metric in the Prometheus text exposition format, version 0.0.4.
+	 */
+	public static String scrape() {
+		StringBuilder out = new StringBuilder(8192);
+
+		header(out, "http_request_duration_seconds", "summary", "Time from receiving a request to finishing its handler.");
+		for (Route route : ROUTES.values()) {
+			route.latency.writeSummary(out, "http_request_duration_seconds", route.labels);
+		}
+		header(out, "http_requests_total", "counter", "Requests handled, by status code.");
+		for (Route route : ROUTES.values()) {
+			for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+				long count = route.statuses.get(status - MIN_STATUS);
+				if (count > 0) {
+					sample(out, "http_requests_total", route.labels + ",status=\"" + status + "\"", count);
+				}
+			}
+		}
+		header(out, "http_requests_in_flight", "gauge", "Requests received whose handler has not finished.");
+		for (Route route : ROUTES.values()) {
+			sample(out, "http_requests_in_flight", route.labels, route.inFlight.sum());
+		}
+
+		header(out, "dao_query_duration_seconds", "summary", "Time spent in a DAO method, including the wait for a connection.");
+		for (Timer timer : QUERIES.values()) {
+			timer.writeSummary(out, "dao_query_duration_seconds", timer.labels);
+		}
+		header(out, "dao_query_errors_total", "counter", "DAO method calls that failed with an SQLException.");
+		for (Timer timer : QUERIES.values()) {
+			sample(out, "dao_query_errors_total", timer.labels, timer.errors.sum());
+		}
+
+		for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+			Family family = entry.getValue();
+			header(out, entry.getKey(), family.type, family.help);
+			for (Map.Entry<String, DoubleSupplier> source : family.sources.entrySet()) {
+				sample(out, entry.getKey(), source.getKey(), source.getValue().getAsDouble());
+			}
+		}
+		return out.toString();
+	}
+
+	private static void header(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, long value) {
+		appendName(out, name, labels).append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		appendName(out, name, labels);
+		if (Double.isNaN(value)) {
+			out.append("NaN");
+		} else if (Double.isInfinite(value)) {
+			out.append(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+
+	private static StringBuilder appendName(StringBuilder out, String name, String labels) {
+		out.append(name);
+		if (!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		return out.append(' ');
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Counts calls and records their latencies.
+	 */
+	public static class Timer {
+		private final String labels;
+		private final AtomicHistogram histogram = new AtomicHistogram(LOWEST_DISCERNIBLE_NANOS,
+				HIGHEST_TRACKABLE_NANOS, 2);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sumNanos = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+
+		Timer(String labels) {
+			this.labels = labels;
+		}
+
+		/**
+		 * @param nanos the duration of one call.
+		 */
+		public void record(long nanos) {
+			long value = Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+			histogram.recordValue(value);
+			count.increment();
+			sumNanos.add(value);
+		}
+
+		/**
+		 * @param startNanos the System.nanoTime() at which the call started.
+		 */
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		/**
+		 * Counts a failed call. The call's duration is still recorded separately.
+		 */
+		public void error() {
+			errors.increment();
+		}
+
+		/**
+		 * @return the number of calls recorded.
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @return the number of failed calls.
+		 */
+		public long getErrorCount() {
+			return errors.sum();
+		}
+
+		/**
+		 * @param quantile a quantile between 0 and 1.
+		 * @return the duration, in nanoseconds, that the given fraction of calls took at most.
+		 */
+		public long getValueAtQuantile(double quantile) {
+			return histogram.getValueAtPercentile(quantile * 100);
+		}
+
+		private void writeSummary(StringBuilder out, String name, String labels) {
+			for (double quantile : QUANTILES) {
+				sample(out, name, labels + ",quantile=\"" + quantile + "\"", getValueAtQuantile(quantile) / 1e9);
+			}
+			sample(out, name + "_sum", labels, sumNanos.sum() / 1e9);
+			sample(out, name + "_count", labels, count.sum());
+		}
+	}
+
+	/**
+	 * Latency, status codes and in-flight requests of one route.
+	 */
+	public static class Route {
+		private final String labels;
+		private final Timer latency;
+		private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS - MIN_STATUS + 1);
+		private final LongAdder inFlight = new LongAdder();
+
+		Route(String labels) {
+			this.labels = labels;
+			this.latency = new Timer(labels);
+		}
+
+		/**
+		 * Marks a request as in flight.
+		 * @return the start time to pass to finish().
+		 */
+		public long start() {
+			inFlight.increment();
+			return System.nanoTime();
+		}
+
+		/**
+		 * Records a finished request.
+		 * @param startNanos the value returned by start().
+		 * @param status the response status code.
+		 */
+		public void finish(long startNanos, int status) {
+			latency.recordSince(startNanos);
+			inFlight.decrement();
+			if (status >= MIN_STATUS && status <= MAX_STATUS) {
+				statuses.incrementAndGet(status - MIN_STATUS);
+			}
+		}
+
+		/**
+		 * @return the latency timer of the route.
+		 */
+		public Timer getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return the number of requests received whose handler has not finished.
+		 */
+		public long getInFlight() {
+			return inFlight.sum();
+		}
+
+		/**
+		 * @param status a status code.
+		 * @return the number of finished requests answered with that status code.
+		 */
+		public long getStatusCount(int status) {
+			return status >= MIN_STATUS && status <= MAX_STATUS ? statuses.get(status - MIN_STATUS) : 0;
+		}
+	}
+
+	/**
+	 * Gauges or counters sharing a name, keyed by their labels.
+	 */
+	private static class Family {
+		private final String type;
+		private final String help;
+		private final Map<String, DoubleSupplier> sources = new ConcurrentSkipListMap<>();
+
+		Family(String type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Applies the versioned schema scripts in src/main/resources/db/migration at startup. Each script is run once,
+ * in version order, and recorded in the schema_migrations table together with a checksum of its contents.
+ * Scripts only ever add to the schema, so existing data is never dropped.
+ *
+ * If a script that has already been applied is later edited, its checksum no longer matches the history and
+ * the runner refuses to continue; add a new version instead.
+ */
+public class MigrationRunner {
+
+	private static final String LOCATION = "db/migration/";
+
+	/**
+	 * The migration scripts, in the order they must be applied. New scripts are appended to the end.
+	 */
+	private static final String[] MIGRATIONS = {
+			"V1__create_tables.sql",
+			"V2__message_indexes.sql",
+	};
+
+	/**
+	 * Applies every migration that has not been applied yet.
+	 * @param connection the connection to run the migrations on.
+	 * @return the number of migrations applied.
+	 * @throws SQLException if a script fails.
+	 * @throws IllegalStateException if an applied script has been modified or a script is missing.
+	 */
+	public int migrate(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table if not exists schema_migrations ("
+					+ "version int primary key, "
+					+ "description varchar(255), "
+					+ "checksum varchar(64), "
+					+ "applied_on timestamp default current_timestamp)");
+		}
+		Map<Integer, String> applied = appliedChecksums(connection);
+		int count = 0;
+		for (String name : MIGRATIONS) {
+			int version = versionOf(name);
+			String script = load(name);
+			String checksum = checksum(script);
+			String recorded = applied.get(version);
+			if (recorded != null) {
+				if (!recorded.equals(checksum)) {
+					throw new IllegalStateException("Migration " + name + " was modified after it was applied");
+				}
+				continue;
+			}
+			apply(connection, version, name, script, checksum);
+			count++;
+		}
+		return count;
+	}
+
+	private void apply(Connection connection, int version, String name, String script, String checksum)
+			throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			RunScript.execute(connection, new StringReader(script));
+			String sql = "insert into schema_migrations (version, description, checksum) values (?, ?, ?)";
+			try (PreparedStatement ps = connection.prepareStatement(sql)) {
+				ps.setInt(1, version);
+				ps.setString(2, descriptionOf(name));
+				ps.setString(3, checksum);
+				ps.executeUpdate();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private static Map<Integer, String> appliedChecksums(Connection connection) throws SQLException {
+		Map<Integer, String> applied = new HashMap<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("select version, checksum from schema_migrations")) {
+			while (rs.next()) {
+				applied.put(rs.getInt("version"), rs.getString("checksum"));
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * @return the version number of a script named like V2__description.sql.
+	 */
+	private static int versionOf(String name) {
+		return Integer.parseInt(name.substring(1, name.indexOf("__")));
+	}
+
+	private static String descriptionOf(String name) {
+		return name.substring(name.indexOf("__") + 2, name.length() - ".sql".length()).replace('_', ' ');
+	}
+
+	private static String load(String name) {
+		try (InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(LOCATION + name)) {
+			if (in == null) {
+				throw new IllegalStateException("Migration " + name + " not found on the classpath");
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read migration " + name, e);
+		}
+	}
+
+	private static String checksum(String script) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors used for keyset pagination. A cursor carries the message_id of the
+ * last row on the previous page, and for lists ordered by time also its time_posted_epoch; clients must treat
+ * it as an opaque string.
+ */
+public class PageCursor {
+
+	private static final String PREFIX = "m:";
+	private static final String TIME_PREFIX = "t:";
+
+	/**
+	 * @param lastMessageId the message_id of the last message on the current page.
+	 * @return an opaque cursor for the following page.
+	 */
+	public static String encode(int lastMessageId) {
+		byte[] raw = (PREFIX + lastMessageId).getBytes(StandardCharsets.UTF_8);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+	}
+
+	/**
+	 * @param cursor a cursor previously returned by encode, or null for the first page.
+	 * @return the message_id to continue after, 0 for the first page.
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	public static int decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return 0;
+		}
+		String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		if (!raw.startsWith(PREFIX)) {
+			throw new IllegalArgumentException("malformed cursor");
+		}
+		return Integer.parseInt(raw.substring(PREFIX.length()));
+	}
+
+	/**
+	 * @param lastTime the time_posted_epoch of the last message on the current page of a time-ordered list.
+	 * @param lastMessageId the message_id of that message, which orders the messages posted at the same time.
+	 * @return an opaque cursor for the following page.
+	 */
+	public static String encode(long lastTime, int lastMessageId) {
+		byte[] raw = (TIME_PREFIX + lastTime + ":" + lastMessageId).getBytes(StandardCharsets.UTF_8);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+	}
+
+	/**
+	 * @param cursor a cursor previously returned by encode(long, int), or null for the first page.
+	 * @return the position to continue after, which precedes every message for the first page.
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	public static TimePosition decodeTime(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return new TimePosition(Long.MIN_VALUE, 0);
+		}
+		String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		int separator = raw.lastIndexOf(':');
+		if (!raw.startsWith(TIME_PREFIX) || separator < TIME_PREFIX.length()) {
+			throw new IllegalArgumentException("malformed cursor");
+		}
+		return new TimePosition(Long.parseLong(raw.substring(TIME_PREFIX.length(), separator)),
+				Integer.parseInt(raw.substring(separator + 1)));
+	}
+
+	/**
+	 * A position in a list ordered by time_posted_epoch, then message_id.
+	 */
+	public static class TimePosition {
+		public final long time_posted_epoch;
+		public final int message_id;
+
+		public TimePosition(long time_posted_epoch, int message_id) {
+			this.time_posted_epoch = time_posted_epoch;
+			this.message_id = message_id;
+		}
+	}
+}
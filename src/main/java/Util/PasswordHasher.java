@@ -0,0 +1,127 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with PBKDF2-HMAC-SHA256 and a random salt per password. The iteration count is the work
+ * factor: each doubling doubles the cost of checking a guess, for an attacker and for the server alike.
+ *
+ * A hash is stored as pbkdf2-sha256$iterations$salt$hash, with the salt and hash in base64, so hashes made with
+ * an older iteration count keep verifying after the work factor is raised; needsRehash() tells the caller to
+ * replace them the next time the password is known.
+ *
+ * Hashing is deliberately slow CPU work and should not run on request threads.
+ */
+public class PasswordHasher {
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	/**
+	 * Prefix of every encoded hash, which plaintext passwords are told apart by.
+	 */
+	public static final String PREFIX = "pbkdf2-sha256$";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+
+	private final int iterations;
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @param iterations the work factor for new hashes.
+	 */
+	public PasswordHasher(int iterations) {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("iterations must be positive: " + iterations);
+		}
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @param password the password to hash.
+	 * @return the encoded hash, salt and work factor, at most 100 characters.
+	 */
+	public String hash(String password) {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		byte[] hash = pbkdf2(password, salt, iterations);
+		Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+		return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+	}
+
+	/**
+	 * Checks a password against an encoded hash in time that does not depend on where they differ.
+	 * @param password the password to check.
+	 * @param encoded a value returned by hash().
+	 * @return true if the password matches.
+	 */
+	public boolean verify(String password, String encoded) {
+		String[] parts = split(encoded);
+		if (parts == null) {
+			return false;
+		}
+		Base64.Decoder base64 = Base64.getDecoder();
+		byte[] expected = base64.decode(parts[2]);
+		byte[] actual = pbkdf2(password, base64.decode(parts[1]), Integer.parseInt(parts[0]));
+		return MessageDigest.isEqual(expected, actual);
+	}
+
+	/**
+	 * @param stored a stored password.
+	 * @return true if the value is a hash made by this class, false if it is a legacy plaintext password.
+	 */
+	public static boolean isHash(String stored) {
+		return stored != null && stored.startsWith(PREFIX);
+	}
+
+	/**
+	 * @param encoded a value returned by hash().
+	 * @return true if the hash was made with a lower work factor than this hasher's.
+	 */
+	public boolean needsRehash(String encoded) {
+		String[] parts = split(encoded);
+		return parts == null || Integer.parseInt(parts[0]) < iterations;
+	}
+
+	/**
+	 * @return the work factor used for new hashes.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the iterations, salt and hash fields, or null if the value is not an encoded hash.
+	 */
+	private static String[] split(String encoded) {
+		if (!isHash(encoded)) {
+			return null;
+		}
+		String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+		return parts.length == 3 ? parts : null;
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		}
+	}
+
+	/**
+	 * Compares two plaintext passwords in time that does not depend on where they differ. Used while legacy
+	 * rows are still stored in plaintext.
+	 * @return true if the passwords are equal.
+	 */
+	public static boolean matchesPlaintext(String password, String stored) {
+		return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+	}
+}
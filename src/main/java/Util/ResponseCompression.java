@@ -0,0 +1,146 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiates and applies gzip or deflate content coding for response bodies. Bodies below a minimum size are
+ * sent as they are, since they would fit in a packet anyway and compressing them costs more than it saves.
+ *
+ * Brotli is not offered: the JDK has no Brotli encoder, and the available ones wrap native libraries.
+ */
+public class ResponseCompression {
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * Smallest body, in bytes, worth compressing. Can be overridden with -Dcompression.minSize.
+	 */
+	public static final int MIN_SIZE = Integer.getInteger("compression.minSize", 1500);
+	/**
+	 * Deflate level, from 1 (fastest) to 9 (smallest). JSON lists repeat the same keys on every element, so the
+	 * low levels already find most of the redundancy at a fraction of the CPU of the default level 6. Can be
+	 * overridden with -Dcompression.level.
+	 */
+	public static final int LEVEL = Integer.getInteger("compression.level", 4);
+
+	private ResponseCompression() {
+	}
+
+	/**
+	 * Picks the content coding for a response from the request's Accept-Encoding header, preferring gzip when
+	 * the client weighs both equally. A coding the client gives a q-value of 0 is refused, and * stands for
+	 * any coding the header does not name.
+	 * @param acceptEncoding the header value, or null if the request has none.
+	 * @return GZIP, DEFLATE, or null to send the body as it is.
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		double gzip = -1;
+		double deflate = -1;
+		double any = -1;
+		for (String part : acceptEncoding.split(",")) {
+			String[] fields = part.split(";");
+			String coding = fields[0].trim().toLowerCase();
+			double quality = 1;
+			for (int i = 1; i < fields.length; i++) {
+				String parameter = fields[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			if (coding.equals(GZIP)) {
+				gzip = quality;
+			} else if (coding.equals(DEFLATE)) {
+				deflate = quality;
+			} else if (coding.equals("*")) {
+				any = quality;
+			}
+		}
+		gzip = gzip < 0 ? any : gzip;
+		deflate = deflate < 0 ? any : deflate;
+		if (gzip > 0 && gzip >= deflate) {
+			return GZIP;
+		}
+		return deflate > 0 ? DEFLATE : null;
+	}
+
+	/**
+	 * Encodes a body with the given coding, unless it is below MIN_SIZE.
+	 * @param body the uncompressed body.
+	 * @param coding GZIP, DEFLATE, or null.
+	 * @return the body to send and the coding it was sent with.
+	 */
+	public static Body encode(byte[] body, String coding) {
+		if (coding == null || body.length < MIN_SIZE) {
+			return new Body(body, null);
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+		try {
+			if (coding.equals(GZIP)) {
+				try (OutputStream out = new LeveledGzipOutputStream(buffer)) {
+					out.write(body);
+				}
+			} else {
+				Deflater deflater = new Deflater(LEVEL);
+				try (OutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+					out.write(body);
+				} finally {
+					deflater.end();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new Body(buffer.toByteArray(), coding);
+	}
+
+	/**
+	 * An encoded response body. Shared between responses, so the bytes must not be modified.
+	 */
+	public static class Body {
+		private final byte[] bytes;
+		private final String coding;
+
+		Body(byte[] bytes, String coding) {
+			this.bytes = bytes;
+			this.coding = coding;
+		}
+
+		/**
+		 * @return the bytes to send.
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return the value of the Content-Encoding header, or null if the body is not encoded.
+		 */
+		public String getCoding() {
+			return coding;
+		}
+	}
+
+	/**
+	 * GZIPOutputStream always uses the default level; its deflater is only reachable from a subclass.
+	 */
+	private static class LeveledGzipOutputStream extends GZIPOutputStream {
+		LeveledGzipOutputStream(OutputStream out) throws IOException {
+			super(out);
+			def.setLevel(LEVEL);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter of strings that grows as it fills. It answers "definitely not present" or "maybe present";
+ * there are no false negatives.
+ *
+ * The filter starts with one stage sized for the expected number of entries at the target false-positive
+ * rate. When a stage has taken its share of entries a new stage is added with twice the capacity and half
+ * the error rate, so the compound false-positive rate stays below twice the target however many entries are
+ * added. Additions and lookups are lock-free; only adding a stage is synchronized.
+ */
+public class ScalableBloomFilter {
+
+	private final double targetFalsePositiveRate;
+	private volatile Stage[] stages;
+
+	/**
+	 * @param expectedInsertions the number of entries the first stage is sized for.
+	 * @param falsePositiveRate the target probability that mightContain returns true for an absent entry.
+	 */
+	public ScalableBloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("invalid bloom filter sizing: expectedInsertions=" + expectedInsertions
+					+ ", falsePositiveRate=" + falsePositiveRate);
+		}
+		this.targetFalsePositiveRate = falsePositiveRate;
+		this.stages = new Stage[] { new Stage(expectedInsertions, falsePositiveRate / 2) };
+	}
+
+	/**
+	 * @param value the entry to look up.
+	 * @return false if the entry has definitely not been added, true if it may have been.
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		for (Stage stage : stages) {
+			if (stage.mightContain(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param value the entry to add.
+	 */
+	public void put(String value) {
+		long hash = hash(value);
+		Stage[] current = stages;
+		Stage last = current[current.length - 1];
+		if (last.count.sum() >= last.capacity) {
+			last = grow(current);
+		}
+		last.put(hash);
+	}
+
+	private synchronized Stage grow(Stage[] seen) {
+		Stage[] current = stages;
+		Stage last = current[current.length - 1];
+		if (current != seen && last.count.sum() < last.capacity) {
+			return last;
+		}
+		Stage next = new Stage(last.capacity * 2L, last.falsePositiveRate / 2);
+		Stage[] grown = new Stage[current.length + 1];
+		System.arraycopy(current, 0, grown, 0, current.length);
+		grown[current.length] = next;
+		stages = grown;
+		return next;
+	}
+
+	/**
+	 * @return the fraction of bits set in the stage currently receiving entries.
+	 */
+	public double getFillRatio() {
+		Stage[] current = stages;
+		return current[current.length - 1].fillRatio();
+	}
+
+	/**
+	 * @return the number of stages the filter has grown to.
+	 */
+	public int getStageCount() {
+		return stages.length;
+	}
+
+	/**
+	 * @return the number of entries added.
+	 */
+	public long getApproximateCount() {
+		long count = 0;
+		for (Stage stage : stages) {
+			count += stage.count.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the false-positive rate implied by how full each stage actually is.
+	 */
+	public double getExpectedFalsePositiveRate() {
+		double allNegative = 1;
+		for (Stage stage : stages) {
+			allNegative *= 1 - Math.pow(stage.fillRatio(), stage.hashes);
+		}
+		return 1 - allNegative;
+	}
+
+	/**
+	 * @return the false-positive rate the filter was sized for.
+	 */
+	public double getTargetFalsePositiveRate() {
+		return targetFalsePositiveRate;
+	}
+
+	/**
+	 * @return the total size of all stages, in bytes.
+	 */
+	public long getSizeInBytes() {
+		long bytes = 0;
+		for (Stage stage : stages) {
+			bytes += stage.bits.length() * 8L;
+		}
+		return bytes;
+	}
+
+	/**
+	 * 64-bit FNV-1a over the UTF-8 bytes, finished with the murmur3 mixer so both halves are well distributed.
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * One fixed-size Bloom filter. Bit positions are derived from the two halves of the hash by double hashing.
+	 */
+	private static class Stage {
+		private final long capacity;
+		private final double falsePositiveRate;
+		private final AtomicLongArray bits;
+		private final long bitCount;
+		private final int hashes;
+		private final LongAdder count = new LongAdder();
+
+		Stage(long capacity, double falsePositiveRate) {
+			this.capacity = capacity;
+			this.falsePositiveRate = falsePositiveRate;
+			long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6));
+			this.bits = new AtomicLongArray(words);
+			this.bitCount = words * 64L;
+			this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+		}
+
+		boolean mightContain(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 1; i <= hashes; i++) {
+				long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+				if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void put(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 1; i <= hashes; i++) {
+				long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+				int word = (int) (index >>> 6);
+				long mask = 1L << index;
+				long old;
+				while (((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+					// retry until the bit is set by us or another thread
+				}
+			}
+			count.increment();
+		}
+
+		double fillRatio() {
+			long set = 0;
+			for (int i = 0; i < bits.length(); i++) {
+				set += Long.bitCount(bits.get(i));
+			}
+			return (double) set / bitCount;
+		}
+	}
+}
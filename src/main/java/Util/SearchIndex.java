@@ -0,0 +1,713 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process full-text index over message text. Each term maps to the IDs of the documents containing it,
+ * delta- and varint-encoded in a byte array, and each document keeps its sorted terms and their frequencies,
+ * so a change touches only the posting lists of the terms it adds or drops.
+ *
+ * A posting is not removed when its document is deleted or no longer has the term: it is skipped at query time,
+ * because the document's own terms no longer include it, and counted as stale. A list whose stale postings
+ * outnumber the live ones is rewritten without them, and dropped when none are left, so the cost of a delete is
+ * bounded by the number of terms in the document and memory stays proportional to the live postings. When an
+ * update gives a document back a term it had lost, its stale posting becomes live again instead of a second one
+ * being added, so a list never holds an ID twice.
+ *
+ * Query syntax: terms are separated by spaces and a document must contain all of them; OR separates
+ * alternatives, and a term ending in * matches every indexed term it is a prefix of, up to MAX_PREFIX_TERMS of
+ * them. Results are ranked with BM25. The matches of all alternatives are walked together in ID order, so each
+ * document is scored once, and only the best limit of them are kept, in a heap of primitive arrays.
+ *
+ * Memory is bounded by a cap on the number of documents. When a new document would go over it, the document
+ * with the lowest ID is dropped, and IDs below the dropped ones are not indexed again, so the index holds the
+ * newest documents. A document is the text of one message, at most 255 characters and so at most 128 terms,
+ * which bounds the size of its entry and of its postings, and the cap then bounds the index as a whole.
+ *
+ * Searches run concurrently with each other; changes are serialized and exclude searches.
+ */
+public class SearchIndex {
+
+	/**
+	 * Longer tokens are not indexed, and cannot be searched for.
+	 */
+	public static final int MAX_TERM_LENGTH = 32;
+	/**
+	 * Largest number of terms in one query.
+	 */
+	public static final int MAX_QUERY_TERMS = 16;
+	/**
+	 * Largest number of indexed terms a prefix term expands to, taken in alphabetical order.
+	 */
+	public static final int MAX_PREFIX_TERMS = 64;
+
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final int[] NO_IDS = new int[0];
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<String, Postings> postings = new TreeMap<>();
+	private final IntTable<Document> documents = new IntTable<>();
+	private final int maxDocuments;
+	private int documentCount;
+	private long totalLength;
+	/**
+	 * Every document with a lower ID has been dropped to stay under maxDocuments.
+	 */
+	private int droppedBelow;
+
+	/**
+	 * Creates an index with no cap on the number of documents.
+	 */
+	public SearchIndex() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxDocuments the largest number of documents kept; the lowest IDs are dropped beyond it.
+	 */
+	public SearchIndex(int maxDocuments) {
+		if (maxDocuments < 1) {
+			throw new IllegalArgumentException("maxDocuments must be positive");
+		}
+		this.maxDocuments = maxDocuments;
+	}
+
+	/**
+	 * Indexes a document, replacing what was indexed under its ID before. A document whose ID is below those
+	 * dropped to stay under the cap is ignored.
+	 * @param id the document ID, which must not be negative.
+	 * @param text the document's text.
+	 */
+	public void put(int id, String text) {
+		Document document = Document.of(text);
+		lock.writeLock().lock();
+		try {
+			if (id < droppedBelow) {
+				return;
+			}
+			Document previous = documents.put(id, document);
+			if (previous == null) {
+				documentCount++;
+			} else {
+				totalLength -= previous.length;
+			}
+			totalLength += document.length;
+			for (String term : document.terms) {
+				if (previous == null || previous.frequency(term) == 0) {
+					Postings list = postings.computeIfAbsent(term, t -> new Postings());
+					if (list.stale > 0 && id <= list.last && list.contains(id)) {
+						list.stale--;
+					} else {
+						list.add(id);
+					}
+				}
+			}
+			if (previous != null) {
+				for (String term : previous.terms) {
+					if (document.frequency(term) == 0) {
+						dropped(term);
+					}
+				}
+			}
+			while (documentCount > maxDocuments) {
+				while (documents.get(droppedBelow) == null) {
+					droppedBelow++;
+				}
+				removeDocument(droppedBelow++);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a document from the index.
+	 * @param id the document ID.
+	 */
+	public void remove(int id) {
+		lock.writeLock().lock();
+		try {
+			removeDocument(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeDocument(int id) {
+		Document previous = documents.remove(id);
+		if (previous == null) {
+			return;
+		}
+		documentCount--;
+		totalLength -= previous.length;
+		for (String term : previous.terms) {
+			dropped(term);
+		}
+	}
+
+	/**
+	 * Records that a posting of the term went stale, compacting the term's list once most of it is stale.
+	 */
+	private void dropped(String term) {
+		Postings list = postings.get(term);
+		list.stale++;
+		if (list.stale * 2 > list.size()) {
+			int[] live = list.ids(term, documents);
+			if (live.length == 0) {
+				postings.remove(term);
+			} else {
+				postings.put(term, Postings.of(live));
+			}
+		}
+	}
+
+	/**
+	 * @param query the query, in the syntax described on the class.
+	 * @param limit the largest number of results to return.
+	 * @return the IDs of the best matching documents, best first; documents that score the same are ordered by
+	 * descending ID, so newer messages come first.
+	 * @throws IllegalArgumentException If the query has no terms or too many.
+	 */
+	public int[] search(String query, int limit) {
+		List<List<QueryTerm>> alternatives = parse(query);
+		if (limit <= 0) {
+			return NO_IDS;
+		}
+		lock.readLock().lock();
+		try {
+			double averageLength = documentCount == 0 ? 1 : (double) totalLength / documentCount;
+			int[][] matches = new int[alternatives.size()][];
+			int[] positions = new int[matches.length];
+			for (int i = 0; i < matches.length; i++) {
+				matches[i] = match(alternatives.get(i));
+			}
+			TopDocuments top = new TopDocuments(limit);
+			while (true) {
+				int id = Integer.MAX_VALUE;
+				boolean found = false;
+				for (int i = 0; i < matches.length; i++) {
+					if (positions[i] < matches[i].length && matches[i][positions[i]] <= id) {
+						id = matches[i][positions[i]];
+						found = true;
+					}
+				}
+				if (!found) {
+					return top.ids();
+				}
+				Document document = documents.get(id);
+				double score = 0;
+				for (int i = 0; i < matches.length; i++) {
+					if (positions[i] < matches[i].length && matches[i][positions[i]] == id) {
+						for (QueryTerm term : alternatives.get(i)) {
+							score += score(term, document, averageLength);
+						}
+						positions[i]++;
+					}
+				}
+				top.offer(id, score);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of bytes held by the posting lists, for monitoring.
+	 */
+	public long getPostingBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = 0;
+			for (Postings list : postings.values()) {
+				bytes += list.data.length + 4L * list.pending.length;
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of documents in the index.
+	 */
+	public int getDocumentCount() {
+		lock.readLock().lock();
+		try {
+			return documentCount;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of distinct terms in the index.
+	 */
+	public int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the sorted IDs of the documents containing every term.
+	 */
+	private int[] match(List<QueryTerm> terms) {
+		List<int[]> lists = new ArrayList<>(terms.size());
+		for (QueryTerm term : terms) {
+			int[] ids = ids(term);
+			if (ids.length == 0) {
+				return NO_IDS;
+			}
+			lists.add(ids);
+		}
+		lists.sort((a, b) -> Integer.compare(a.length, b.length));
+		int[] result = lists.get(0);
+		for (int i = 1; i < lists.size() && result.length > 0; i++) {
+			result = intersect(result, lists.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the sorted IDs of the documents containing the term, or any of the terms it is a prefix of.
+	 */
+	private int[] ids(QueryTerm term) {
+		if (!term.prefix) {
+			Postings list = postings.get(term.text);
+			return list == null ? NO_IDS : list.ids(term.text, documents);
+		}
+		int[] result = NO_IDS;
+		int expanded = 0;
+		for (Map.Entry<String, Postings> entry : prefixed(term.text).entrySet()) {
+			if (expanded++ == MAX_PREFIX_TERMS) {
+				break;
+			}
+			result = union(result, entry.getValue().ids(entry.getKey(), documents));
+		}
+		return result;
+	}
+
+	private NavigableMap<String, Postings> prefixed(String prefix) {
+		return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	/**
+	 * BM25 weight of one query term in a document. A prefix term is weighted by the best term it matches there.
+	 */
+	private double score(QueryTerm term, Document document, double averageLength) {
+		if (!term.prefix) {
+			return weight(term.text, document.frequency(term.text), document, averageLength);
+		}
+		double best = 0;
+		int from = Arrays.binarySearch(document.terms, term.text);
+		for (int i = from < 0 ? -from - 1 : from; i < document.terms.length && document.terms[i].startsWith(term.text); i++) {
+			best = Math.max(best, weight(document.terms[i], document.frequencies[i], document, averageLength));
+		}
+		return best;
+	}
+
+	private double weight(String term, int frequency, Document document, double averageLength) {
+		Postings list = postings.get(term);
+		int documentFrequency = list == null ? 0 : Math.max(1, list.size() - list.stale);
+		double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+		double norm = K1 * (1 - B + B * document.length / averageLength);
+		return idf * frequency * (K1 + 1) / (frequency + norm);
+	}
+
+	/**
+	 * The best documents seen so far, at most limit of them, in a min-heap whose root is the worst kept. Scores
+	 * and IDs are held in parallel primitive arrays, so ranking n matches costs O(n log limit) and allocates
+	 * nothing per match.
+	 */
+	private static final class TopDocuments {
+		private final double[] scores;
+		private final int[] ids;
+		private int size;
+
+		TopDocuments(int limit) {
+			this.scores = new double[limit];
+			this.ids = new int[limit];
+		}
+
+		void offer(int id, double score) {
+			if (size < ids.length) {
+				scores[size] = score;
+				ids[size] = id;
+				siftUp(size++);
+			} else if (worse(0, score, id)) {
+				scores[0] = score;
+				ids[0] = id;
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * @return the kept IDs, best first. Empties the heap.
+		 */
+		int[] ids() {
+			int[] result = new int[size];
+			for (int i = result.length - 1; i >= 0; i--) {
+				result[i] = ids[0];
+				size--;
+				scores[0] = scores[size];
+				ids[0] = ids[size];
+				siftDown(0);
+			}
+			return result;
+		}
+
+		/**
+		 * @return true if the entry at index ranks below the given score and ID; ties go to the higher ID.
+		 */
+		private boolean worse(int index, double score, int id) {
+			return scores[index] < score || (scores[index] == score && ids[index] < id);
+		}
+
+		private void siftUp(int index) {
+			while (index > 0) {
+				int parent = (index - 1) / 2;
+				if (!worse(index, scores[parent], ids[parent])) {
+					return;
+				}
+				swap(index, parent);
+				index = parent;
+			}
+		}
+
+		private void siftDown(int index) {
+			while (true) {
+				int child = 2 * index + 1;
+				if (child >= size) {
+					return;
+				}
+				if (child + 1 < size && worse(child + 1, scores[child], ids[child])) {
+					child++;
+				}
+				if (!worse(child, scores[index], ids[index])) {
+					return;
+				}
+				swap(index, child);
+				index = child;
+			}
+		}
+
+		private void swap(int a, int b) {
+			double score = scores[a];
+			scores[a] = scores[b];
+			scores[b] = score;
+			int id = ids[a];
+			ids[a] = ids[b];
+			ids[b] = id;
+		}
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * @return the sorted IDs in either array, each once. Repeats within an array are dropped too.
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length || j < b.length) {
+			int id = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+			if (size == 0 || result[size - 1] != id) {
+				result[size++] = id;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Splits text into lowercase terms: runs of letters and digits no longer than MAX_TERM_LENGTH.
+	 * @param text the text to split.
+	 * @return the terms in the order they appear, with repeats.
+	 */
+	public static List<String> terms(String text) {
+		List<String> terms = new ArrayList<>();
+		if (text == null) {
+			return terms;
+		}
+		String lower = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		for (int i = 0; i <= lower.length(); i++) {
+			boolean inTerm = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+			if (inTerm && start < 0) {
+				start = i;
+			} else if (!inTerm && start >= 0) {
+				if (i - start <= MAX_TERM_LENGTH) {
+					terms.add(lower.substring(start, i));
+				}
+				start = -1;
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Checks a query without running it.
+	 * @param query the query, in the syntax described on the class.
+	 * @throws IllegalArgumentException If the query has no terms or too many.
+	 */
+	public static void checkQuery(String query) {
+		parse(query);
+	}
+
+	/**
+	 * @return the query's alternatives, each a list of terms a document must all contain.
+	 */
+	private static List<List<QueryTerm>> parse(String query) {
+		List<List<QueryTerm>> alternatives = new ArrayList<>();
+		List<QueryTerm> current = new ArrayList<>();
+		int count = 0;
+		for (String word : query == null ? new String[0] : query.trim().split("\\s+")) {
+			if (word.equals("OR")) {
+				if (!current.isEmpty()) {
+					alternatives.add(current);
+					current = new ArrayList<>();
+				}
+				continue;
+			}
+			if (word.equals("AND")) {
+				continue;
+			}
+			boolean prefix = word.endsWith("*");
+			List<String> terms = terms(word);
+			for (int i = 0; i < terms.size(); i++) {
+				current.add(new QueryTerm(terms.get(i), prefix && i == terms.size() - 1));
+				count++;
+			}
+		}
+		if (!current.isEmpty()) {
+			alternatives.add(current);
+		}
+		if (count == 0) {
+			throw new IllegalArgumentException("query has no terms");
+		}
+		if (count > MAX_QUERY_TERMS) {
+			throw new IllegalArgumentException("query has more than " + MAX_QUERY_TERMS + " terms");
+		}
+		return alternatives;
+	}
+
+	private static final class QueryTerm {
+		final String text;
+		final boolean prefix;
+
+		QueryTerm(String text, boolean prefix) {
+			this.text = text;
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * A document's distinct terms in sorted order, how often each occurs, and its length in terms.
+	 */
+	private static final class Document {
+		final String[] terms;
+		final byte[] frequencies;
+		final int length;
+
+		private Document(String[] terms, byte[] frequencies, int length) {
+			this.terms = terms;
+			this.frequencies = frequencies;
+			this.length = length;
+		}
+
+		static Document of(String text) {
+			List<String> all = terms(text);
+			TreeMap<String, Integer> counts = new TreeMap<>();
+			for (String term : all) {
+				counts.merge(term, 1, Integer::sum);
+			}
+			String[] terms = new String[counts.size()];
+			byte[] frequencies = new byte[counts.size()];
+			int i = 0;
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				terms[i] = entry.getKey().intern();
+				frequencies[i++] = (byte) Math.min(entry.getValue(), Byte.MAX_VALUE);
+			}
+			return new Document(terms, frequencies, all.size());
+		}
+
+		int frequency(String term) {
+			int index = Arrays.binarySearch(terms, term);
+			return index < 0 ? 0 : frequencies[index];
+		}
+	}
+
+	/**
+	 * The postings of one term: IDs in ascending order as varint-encoded gaps, plus a short unsorted buffer for
+	 * IDs lower than the last one encoded, which only an update of an older document produces. The buffer is
+	 * merged into the encoded IDs when it fills.
+	 */
+	private static final class Postings {
+		private static final int PENDING_LIMIT = 16;
+
+		byte[] data = new byte[4];
+		int length;
+		int count;
+		int last = -1;
+		int[] pending = NO_IDS;
+		int pendingCount;
+		int stale;
+
+		static Postings of(int[] sortedIds) {
+			Postings list = new Postings();
+			list.data = new byte[Math.max(4, sortedIds.length * 2)];
+			for (int id : sortedIds) {
+				list.append(id);
+			}
+			return list;
+		}
+
+		int size() {
+			return count + pendingCount;
+		}
+
+		/**
+		 * @return true if the ID has a posting in this list, live or stale. Scans the list up to the ID.
+		 */
+		boolean contains(int id) {
+			for (int i = 0; i < pendingCount; i++) {
+				if (pending[i] == id) {
+					return true;
+				}
+			}
+			int value = 0;
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					gap |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				value = i == 0 ? gap : value + gap;
+				if (value >= id) {
+					return value == id;
+				}
+			}
+			return false;
+		}
+
+		void add(int id) {
+			if (id > last) {
+				append(id);
+				return;
+			}
+			if (pendingCount == pending.length) {
+				if (pendingCount == PENDING_LIMIT) {
+					merge();
+					add(id);
+					return;
+				}
+				pending = Arrays.copyOf(pending, Math.max(4, pendingCount * 2));
+			}
+			pending[pendingCount++] = id;
+		}
+
+		private void append(int id) {
+			if (length + 5 > data.length) {
+				data = Arrays.copyOf(data, Math.max(length + 5, data.length + (data.length >> 1)));
+			}
+			int value = last < 0 ? id : id - last;
+			while ((value & ~0x7f) != 0) {
+				data[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte) value;
+			last = id;
+			count++;
+		}
+
+		/**
+		 * Re-encodes the IDs with the buffer merged in, keeping stale postings; only compaction drops them.
+		 */
+		private void merge() {
+			int[] ids = union(decode(), sortedPending());
+			int staleCount = stale;
+			Postings merged = of(ids);
+			data = merged.data;
+			length = merged.length;
+			count = merged.count;
+			last = merged.last;
+			pending = NO_IDS;
+			pendingCount = 0;
+			stale = staleCount;
+		}
+
+		private int[] decode() {
+			int[] ids = new int[count];
+			int id = 0;
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[position++];
+					value |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				id = i == 0 ? value : id + value;
+				ids[i] = id;
+			}
+			return ids;
+		}
+
+		private int[] sortedPending() {
+			int[] ids = Arrays.copyOf(pending, pendingCount);
+			Arrays.sort(ids);
+			return ids;
+		}
+
+		/**
+		 * @return the sorted, distinct IDs of the documents that still contain the term.
+		 */
+		int[] ids(String term, IntTable<Document> documents) {
+			int[] ids = pendingCount == 0 ? decode() : union(decode(), sortedPending());
+			if (stale == 0) {
+				return ids;
+			}
+			int size = 0;
+			for (int id : ids) {
+				Document document = documents.get(id);
+				if (document != null && document.frequency(term) > 0) {
+					ids[size++] = id;
+				}
+			}
+			return Arrays.copyOf(ids, size);
+		}
+	}
+}
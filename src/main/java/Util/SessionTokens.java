@@ -0,0 +1,140 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks stateless session tokens. A token names the account it was issued to and when it expires,
+ * and is signed with HMAC-SHA256, so any server holding the key can check it in memory without a session
+ * store or a database lookup.
+ *
+ * A token has the form keyId.accountId.expiresEpochSeconds.signature, with the signature in unpadded base64url.
+ * Keys are configured as a comma-separated list of keyId:base64Secret pairs. The first key signs new tokens
+ * and every listed key is accepted, so a key is rotated by putting its replacement first, and retired by
+ * removing it once the tokens it signed have expired.
+ */
+public class SessionTokens {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final Map<String, SigningKey> keys = new LinkedHashMap<>();
+	private final SigningKey active;
+	private final long ttlSeconds;
+
+	/**
+	 * @param keys keyId:base64Secret pairs separated by commas; the first one signs new tokens.
+	 * @param ttlSeconds how long a new token stays valid.
+	 * @throws IllegalArgumentException if no key is given or a key is malformed.
+	 */
+	public SessionTokens(String keys, long ttlSeconds) {
+		for (String pair : keys.split(",")) {
+			int colon = pair.indexOf(':');
+			if (colon <= 0 || pair.indexOf('.') >= 0) {
+				throw new IllegalArgumentException("session keys must be keyId:base64Secret pairs without dots");
+			}
+			String id = pair.substring(0, colon).trim();
+			byte[] secret = Base64.getDecoder().decode(pair.substring(colon + 1).trim());
+			if (secret.length < 32) {
+				throw new IllegalArgumentException("session key " + id + " is shorter than 256 bits");
+			}
+			this.keys.put(id, new SigningKey(id, secret));
+		}
+		this.active = this.keys.values().iterator().next();
+		this.ttlSeconds = ttlSeconds;
+	}
+
+	/**
+	 * Creates tokens from the -Dsession.keys and -Dsession.ttlSeconds system properties. Without configured
+	 * keys a random key is generated, so tokens only work on this server until it restarts.
+	 * @return the configured token issuer.
+	 */
+	public static SessionTokens fromSystemProperties() {
+		long ttlSeconds = Long.getLong("session.ttlSeconds", 3600);
+		String keys = System.getProperty("session.keys");
+		if (keys == null || keys.isBlank()) {
+			byte[] secret = new byte[32];
+			new SecureRandom().nextBytes(secret);
+			keys = "local:" + Base64.getEncoder().encodeToString(secret);
+		}
+		return new SessionTokens(keys, ttlSeconds);
+	}
+
+	/**
+	 * @param account_id the account the token is issued to.
+	 * @return a token signed with the active key.
+	 */
+	public String issue(int account_id) {
+		long expires = System.currentTimeMillis() / 1000 + ttlSeconds;
+		String payload = active.id + "." + account_id + "." + expires;
+		return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(active.sign(payload));
+	}
+
+	/**
+	 * @param token a token presented by a client.
+	 * @return the account the token was issued to, or -1 if the token is malformed, signed with an unknown key,
+	 * tampered with or expired.
+	 */
+	public int verify(String token) {
+		int signatureStart = token.lastIndexOf('.');
+		int keyEnd = token.indexOf('.');
+		int accountEnd = keyEnd < 0 ? -1 : token.indexOf('.', keyEnd + 1);
+		if (keyEnd <= 0 || accountEnd < 0 || signatureStart <= accountEnd) {
+			return -1;
+		}
+		SigningKey key = keys.get(token.substring(0, keyEnd));
+		if (key == null) {
+			return -1;
+		}
+		String payload = token.substring(0, signatureStart);
+		byte[] signature;
+		try {
+			signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		if (!MessageDigest.isEqual(key.sign(payload), signature)) {
+			return -1;
+		}
+		try {
+			int account_id = Integer.parseInt(token, keyEnd + 1, accountEnd, 10);
+			long expires = Long.parseLong(token, accountEnd + 1, signatureStart, 10);
+			return expires >= System.currentTimeMillis() / 1000 ? account_id : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * One HMAC key. Mac instances are not thread-safe and costly to create, so each thread keeps its own.
+	 */
+	private static class SigningKey {
+		private final String id;
+		private final ThreadLocal<Mac> mac;
+
+		SigningKey(String id, byte[] secret) {
+			this.id = id;
+			SecretKeySpec spec = new SecretKeySpec(secret, ALGORITHM);
+			this.mac = ThreadLocal.withInitial(() -> {
+				try {
+					Mac mac = Mac.getInstance(ALGORITHM);
+					mac.init(spec);
+					return mac;
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(ALGORITHM + " is not available", e);
+				}
+			});
+		}
+
+		byte[] sign(String payload) {
+			return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An LRU cache of prepared statements belonging to one physical connection. The DAOs prepare the same constant
+ * SQL on every call; with this cache the database parses and plans each statement once per connection and later
+ * calls reuse the compiled statement.
+ *
+ * Statements are handed out wrapped in a proxy whose close() only clears the parameters and marks the statement
+ * free again. A connection is used by one borrower at a time, so the cache needs no locking; a statement that
+ * is still open when the same SQL is prepared again is bypassed rather than shared.
+ */
+class StatementCache {
+
+	private final Connection physical;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LinkedHashMap<String, Entry> statements;
+
+	/**
+	 * @param physical the connection the statements belong to.
+	 * @param maxSize the most statements kept open on the connection.
+	 * @param hits counter incremented when a cached statement is reused.
+	 * @param misses counter incremented when a statement has to be prepared.
+	 */
+	StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses) {
+		this.physical = physical;
+		this.hits = hits;
+		this.misses = misses;
+		this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > maxSize) {
+					eldest.getValue().evict();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached statement for calls to the prepareStatement overloads the DAOs use, and prepares an
+	 * uncached one for any other overload.
+	 * @param method the prepareStatement method that was called on the connection proxy.
+	 * @param args its arguments; the SQL is always first.
+	 * @return a statement whose close() returns it to this cache.
+	 */
+	PreparedStatement prepare(Method method, Object[] args) throws Throwable {
+		String key = keyOf(args);
+		if (key == null) {
+			return (PreparedStatement) invoke(physical, method, args);
+		}
+		Entry entry = statements.get(key);
+		if (entry != null && !entry.inUse) {
+			hits.increment();
+			entry.inUse = true;
+			return entry.proxy;
+		}
+		misses.increment();
+		PreparedStatement statement = (PreparedStatement) invoke(physical, method, args);
+		if (entry != null) {
+			return statement;
+		}
+		entry = new Entry(statement);
+		entry.inUse = true;
+		statements.put(key, entry);
+		return entry.proxy;
+	}
+
+	/**
+	 * Frees any statement a borrower left open, so the next borrower of the connection can reuse it. Called
+	 * when the connection is returned to the pool.
+	 */
+	void reset() {
+		for (Entry entry : statements.values()) {
+			if (entry.inUse) {
+				try {
+					entry.proxy.close();
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes every cached statement. Called when the physical connection is discarded.
+	 */
+	void closeAll() {
+		Iterator<Entry> it = statements.values().iterator();
+		while (it.hasNext()) {
+			it.next().evict();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return the cache key for prepareStatement(sql), prepareStatement(sql, autoGeneratedKeys) and
+	 * prepareStatement(sql, resultSetType, resultSetConcurrency), or null for other overloads.
+	 */
+	private static String keyOf(Object[] args) {
+		if (args.length == 1) {
+			return (String) args[0];
+		}
+		if (args.length == 2 && args[1] instanceof Integer) {
+			return args[1] + "|" + args[0];
+		}
+		if (args.length == 3 && args[1] instanceof Integer && args[2] instanceof Integer) {
+			return args[1] + "," + args[2] + "|" + args[0];
+		}
+		return null;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A cached statement and the proxy handed to borrowers.
+	 */
+	private static class Entry implements InvocationHandler {
+		private final PreparedStatement statement;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+		private boolean evicted;
+
+		Entry(PreparedStatement statement) {
+			this.statement = statement;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (inUse) {
+						inUse = false;
+						if (evicted) {
+							statement.close();
+						} else {
+							statement.clearParameters();
+							statement.clearBatch();
+						}
+					}
+					return null;
+				case "isClosed":
+					return !inUse || statement.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					break;
+			}
+			if (!inUse) {
+				throw new SQLException("Statement has already been closed");
+			}
+			return StatementCache.invoke(statement, method, args);
+		}
+
+		/**
+		 * Closes the statement now, or when its current borrower closes it.
+		 */
+		void evict() {
+			evicted = true;
+			if (!inUse) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+}
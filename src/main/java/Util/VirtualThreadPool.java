@@ -0,0 +1,113 @@
+package Util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A Jetty ThreadPool that runs every task on its own virtual thread. A request blocked in JDBC then parks a cheap
+ * virtual thread instead of holding one of a small number of platform threads, so slow queries no longer starve
+ * unrelated requests of server threads; the connection pool becomes the limit on concurrent database work.
+ *
+ * Virtual threads need JDK 21. The executor is looked up reflectively so the project still compiles for Java 11;
+ * use isSupported() to check before creating one.
+ *
+ * Pinning: a virtual thread that blocks while holding a monitor pins its carrier thread. The app's own code
+ * never blocks inside one: the message, timeline and list response caches query outside their locks, the
+ * per-message write locks are ReentrantLocks, the pool waits on a Semaphore and the group-commit queue on
+ * java.util.concurrent queues, all of which park without pinning. H2's embedded engine does synchronize its
+ * session and connection methods, so a carrier is pinned while it runs a statement, and can stay pinned while
+ * H2 waits for a lock held by another session. Only a thread that has already checked out a connection gets
+ * there, so at most db.pool.maxSize carriers are pinned at once; keep jdk.virtualThreadScheduler.parallelism
+ * above db.pool.maxSize, or the session holding the lock may find no carrier to finish on.
+ *
+ * In this mode the controller's bulkheads also run each handler on its own virtual thread, bounded by a
+ * Semaphore rather than a fixed set of platform workers, so the handlers' JDBC calls run on virtual threads
+ * and the bound above applies to them.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+	private final ExecutorService executor;
+
+	/**
+	 * @throws IllegalStateException if the running JDK has no virtual threads.
+	 */
+	public VirtualThreadPool() {
+		this.executor = newPerTaskExecutor();
+	}
+
+	/**
+	 * @return true if the running JDK supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		ExecutorService probe = newVirtualThreadPerTaskExecutor();
+		if (probe == null) {
+			return false;
+		}
+		probe.shutdown();
+		return true;
+	}
+
+	/**
+	 * @return an executor that starts a new virtual thread for each task.
+	 * @throws IllegalStateException if the running JDK has no virtual threads.
+	 */
+	static ExecutorService newPerTaskExecutor() {
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		if (executor == null) {
+			throw new IllegalStateException("Virtual threads require JDK 21 or later");
+		}
+		return executor;
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	@Override
+	public void join() throws InterruptedException {
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Virtual threads are created per task, so there is no fixed thread count to report.
+	 */
+	@Override
+	public int getThreads() {
+		return 0;
+	}
+
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	/**
+	 * A new virtual thread can always be started, so the pool is never low on threads.
+	 */
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		executor.shutdown();
+		if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+			executor.shutdownNow();
+		}
+		super.doStop();
+	}
+}
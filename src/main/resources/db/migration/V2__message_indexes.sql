@@ -0,0 +1,7 @@
+-- Per-account listing: posted_by = ? ordered by message_id becomes a range scan that also serves keyset pages.
+create index if not exists message_posted_by_id_idx on message (posted_by, message_id);
+-- Time-ordered listing across all accounts: a range scan on time_posted_epoch, message_id breaks ties.
+create index if not exists message_time_posted_idx on message (time_posted_epoch, message_id);
+-- Time-ordered listing for one account. H2 has no INCLUDE columns, so the index carries every column the
+-- list queries filter and order on and only message_text has to be read from the row.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
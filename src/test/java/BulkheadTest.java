@@ -0,0 +1,112 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.Bulkhead;
+
+public class BulkheadTest {
+    Bulkhead bulkhead;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create a bulkhead with one worker and room for one waiting task.
+     */
+    @Before
+    public void setUp() {
+        bulkhead = new Bulkhead("test", 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        bulkhead.shutdown();
+    }
+
+    /**
+     * A submitted task should run on a worker and complete the returned future with its result.
+     */
+    @Test
+    public void runsTask() throws Exception {
+        CompletableFuture<String> result = bulkhead.submit(() -> Thread.currentThread().getName());
+        Assert.assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("test-bulkhead-"));
+    }
+
+    /**
+     * With the worker busy and the queue full, the next task should be rejected at once and counted.
+     */
+    @Test
+    public void rejectsWhenQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> running = bulkhead.submit(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> queued = bulkhead.submit(() -> "queued");
+        Assert.assertEquals(1, bulkhead.getQueueDepth());
+        try {
+            bulkhead.submit(() -> "rejected");
+            Assert.fail("expected the task to be rejected");
+        } catch(RejectedExecutionException e){
+            Assert.assertEquals(1, bulkhead.getRejectedCount());
+        }
+        release.countDown();
+        Assert.assertEquals(true, running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, bulkhead.getQueueDepth());
+    }
+
+    /**
+     * An exception thrown by a task should complete its future exceptionally with that exception.
+     */
+    @Test
+    public void propagatesTaskFailure() throws Exception {
+        CompletableFuture<Object> result = bulkhead.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the task to fail");
+        } catch(ExecutionException e){
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * A bulkhead that starts a thread per task should run at most maxConcurrent of them at once, let up to the
+     * queue capacity wait for a permit, and reject the rest.
+     */
+    @Test
+    public void perTaskBulkheadBoundsConcurrency() throws Exception {
+        Bulkhead perTask = new Bulkhead("per-task", 1, 1, Executors.newCachedThreadPool());
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Object> running = perTask.submit(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Object> waiting = perTask.submit(() -> "waiting");
+            Assert.assertEquals(1, perTask.getActiveCount());
+            Assert.assertEquals(1, perTask.getQueueDepth());
+            Assert.assertThrows(RejectedExecutionException.class, () -> perTask.submit(() -> "rejected"));
+            Assert.assertEquals(1, perTask.getRejectedCount());
+            release.countDown();
+            Assert.assertEquals(true, running.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals("waiting", waiting.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(0, perTask.getQueueDepth());
+            Assert.assertEquals(2, perTask.getCompletedCount());
+        } finally {
+            perTask.shutdown();
+        }
+    }
+}
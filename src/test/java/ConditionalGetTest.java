@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * A message should be tagged, a request naming that tag should get a 304 with no body, and an update
+     * should change the tag.
+     */
+    @Test
+    public void messageNotModifiedUntilUpdated() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = get("/messages/1", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+        Assert.assertEquals(304, get("/messages/1", "\"other\", W/" + etag).statusCode());
+
+        send("PATCH", "/messages/1", "{\"message_text\": \"updated message\"}");
+        HttpResponse<String> updated = get("/messages/1", etag);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertNotEquals(etag, updated.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * The list of all messages should stay unmodified until a message is posted, and a malformed request should
+     * be rejected even when it names the current tag.
+     */
+    @Test
+    public void listNotModifiedUntilMessagePosted() throws IOException, InterruptedException {
+        String etag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, get("/messages", etag).statusCode());
+        Assert.assertEquals(400, get("/messages?limit=ten", etag).statusCode());
+        Assert.assertEquals(400, get("/messages?cursor=not-a-cursor", etag).statusCode());
+        Assert.assertEquals(400, get("/messages?from=yesterday", etag).statusCode());
+        Assert.assertEquals(400, get("/messages/search?q=%20", etag).statusCode());
+
+        send("POST", "/messages", "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}");
+        HttpResponse<String> changed = get("/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertTrue(changed.body().contains("hello"));
+    }
+
+    /**
+     * An account's list should change when one of its messages is deleted, and not when another account posts.
+     */
+    @Test
+    public void accountListVersionedPerAccount() throws IOException, InterruptedException {
+        send("POST", "/register", "{\"username\":\"other\",\"password\":\"secret\"}");
+        String etag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        send("POST", "/messages", "{\"posted_by\":2, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        send("DELETE", "/messages/1", "");
+        HttpResponse<String> changed = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertEquals("[]", changed.body());
+    }
+}
@@ -0,0 +1,128 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool against a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 1, 2, 200, 0, 1, 8);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection should return it to the pool rather than closing it.
+     */
+    @Test
+    public void closedConnectionIsReturnedToPool() throws SQLException {
+        Connection connection = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveConnections());
+        connection.close();
+        Assert.assertEquals(0, pool.getActiveConnections());
+        Assert.assertEquals(1, pool.getIdleConnections());
+        Assert.assertTrue(connection.isClosed());
+    }
+
+    /**
+     * Borrowing more than maxSize connections should time out instead of opening new ones.
+     */
+    @Test
+    public void checkoutTimesOutWhenPoolIsExhausted() throws SQLException {
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(2, pool.getActiveConnections());
+            Assert.assertThrows(SQLException.class, pool::getConnection);
+            Assert.assertEquals(1, pool.getCheckoutTimeouts());
+        }
+        Assert.assertEquals(0, pool.getActiveConnections());
+    }
+
+    /**
+     * Concurrent checkouts racing the housekeeper's refills should never open more than maxSize connections.
+     */
+    @Test
+    public void refillsNeverExceedMaxSize() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        ConnectionPool busy = new ConnectionPool(dataSource, 2, 2, 1000, 100, 1, 0);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for(int i = 0; i < 4; i++){
+                results.add(clients.submit(() -> {
+                    long end = System.currentTimeMillis() + 300;
+                    while(System.currentTimeMillis() < end){
+                        try (Connection connection = busy.getConnection()) {
+                            Assert.assertTrue(busy.getOpenConnections() <= 2);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> result : results){
+                result.get();
+            }
+            Assert.assertEquals(busy.getIdleConnections(), busy.getOpenConnections());
+        } finally {
+            clients.shutdown();
+            busy.shutdown();
+        }
+    }
+
+    /**
+     * A stale reference to a returned connection must not be usable.
+     */
+    @Test
+    public void returnedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        Assert.assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    /**
+     * Preparing the same SQL again on a reused connection should be served from the statement cache.
+     */
+    @Test
+    public void preparedStatementIsReused() throws SQLException {
+        for(int i = 0; i < 3; i++){
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement("select ?")) {
+                ps.setInt(1, i);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    Assert.assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+        Assert.assertEquals(2, pool.getStatementCacheHits());
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.GroupCommitQueue;
+import DAO.MessageDao;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Metrics;
+
+public class GroupCommitQueueTest {
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Concurrent inserts through the queue should each get back their own row with a distinct generated ID.
+     */
+    @Test
+    public void concurrentInsertsGetTheirOwnIds() throws Exception {
+        MessageDao messageDao = new MessageDao();
+        GroupCommitQueue queue = new GroupCommitQueue(messageDao, 16, 1000);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<Message>> results = new ArrayList<>();
+        for(int i = 0; i < 50; i++){
+            Message message = new Message(1, "batched " + i, 1669947792);
+            results.add(clients.submit(() -> queue.add(message)));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for(Future<Message> result : results){
+            Message added = result.get();
+            Assert.assertNotNull(added);
+            Assert.assertEquals(added, messageDao.getMessage(added.message_id));
+            ids.add(added.message_id);
+        }
+        clients.shutdown();
+        Assert.assertEquals(50, ids.size());
+    }
+
+    /**
+     * An Error thrown while a batch is written should fail only that batch's caller and be counted; the flusher
+     * should keep writing later batches.
+     */
+    @Test
+    public void errorDuringFlushDoesNotStopFlusher() {
+        Metrics.Timer timer = Metrics.query("MessageDao", "addMessages");
+        MessageDao messageDao = Mockito.mock(MessageDao.class);
+        Message added = new Message(7, 1, "second", 1669947792);
+        Mockito.when(messageDao.addMessages(Mockito.anyList()))
+                .thenThrow(new AssertionError("flush failed"))
+                .thenReturn(List.of(added));
+        GroupCommitQueue queue = new GroupCommitQueue(messageDao, 1, 0);
+        long errors = timer.getErrorCount();
+        Assert.assertNull(queue.add(new Message(1, "first", 1669947792)));
+        Assert.assertEquals(errors + 1, timer.getErrorCount());
+        Assert.assertEquals(added, queue.add(new Message(1, "second", 1669947792)));
+    }
+
+    /**
+     * A row that violates a constraint should fail on its own without failing the rest of its batch, and the
+     * failed batch should be counted as an error.
+     */
+    @Test
+    public void failedRowDoesNotFailBatch() {
+        Metrics.Timer timer = Metrics.query("MessageDao", "addMessages");
+        long errors = timer.getErrorCount();
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message(1, "good", 1669947792));
+        messages.add(new Message(99, "no such account", 1669947792));
+        List<Message> added = new MessageDao().addMessages(messages);
+        Assert.assertNotNull(added.get(0));
+        Assert.assertNull(added.get(1));
+        Assert.assertEquals(errors + 1, timer.getErrorCount());
+    }
+}
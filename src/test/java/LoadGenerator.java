@@ -0,0 +1,358 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.AtomicHistogram;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Drives an open-model workload against the API and reports throughput, errors and latency percentiles per
+ * endpoint. This is not a unit test; run it with, for example:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=LoadGenerator -Dexec.args="500 30" -Dsession.required=false
+ *
+ * The posts name posted_by in the body rather than sending a session token, hence -Dsession.required=false.
+ *
+ * Arguments: target requests per second (default 200), duration in seconds (default 30), the endpoint mix as
+ * weights (default register=5,login=10,post=20,get=35,list=20,patch=10) and the number of HTTP clients requests
+ * are spread across (default 32). The API is started on a random port against a freshly reset database.
+ *
+ * Requests arrive on a Poisson schedule fixed in advance, whatever the server is doing: a slow response never
+ * delays the next request, as it would with a closed loop of clients. Latency is measured from the time a
+ * request was scheduled to be sent, not the time it actually was, so when the generator or the server falls
+ * behind the waiting shows up in the percentiles instead of being omitted. The service time, measured from
+ * the actual send, is reported next to it.
+ */
+public class LoadGenerator {
+
+    /**
+     * The operations in the workload.
+     */
+    public enum Endpoint { REGISTER, LOGIN, POST, GET, LIST, PATCH }
+
+    /**
+     * Number of accounts registered before the run, used by login and post.
+     */
+    private static final int SEED_ACCOUNTS = 50;
+    /**
+     * Number of messages posted before the run, so get and patch have rows to hit from the start.
+     */
+    private static final int SEED_MESSAGES = 200;
+    private static final String PASSWORD = "password";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final String baseUrl;
+    private final HttpClient[] clients;
+    private final int[] weights = new int[Endpoint.values().length];
+    private final int totalWeight;
+    private final Random random = new Random(42);
+    private final AtomicInteger highestMessageId = new AtomicInteger();
+    private final AtomicInteger registered = new AtomicInteger();
+    private final Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+
+    /**
+     * @param baseUrl the address of a running API, such as http://localhost:8080.
+     * @param mix comma-separated endpoint=weight pairs; endpoints left out are not requested.
+     * @param clients the number of HttpClient instances, each with its own connections, to spread requests over.
+     */
+    public LoadGenerator(String baseUrl, String mix, int clients) {
+        this.baseUrl = baseUrl;
+        this.clients = new HttpClient[clients];
+        for(int i = 0; i < clients; i++){
+            this.clients[i] = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+        }
+        int total = 0;
+        for(String pair : mix.split(",")){
+            String[] parts = pair.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            weights[Endpoint.valueOf(parts[0].trim().toUpperCase()).ordinal()] = weight;
+            total += weight;
+        }
+        if(total <= 0){
+            throw new IllegalArgumentException("the mix has no endpoints: " + mix);
+        }
+        this.totalWeight = total;
+        for(Endpoint endpoint : Endpoint.values()){
+            stats.put(endpoint, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        String mix = args.length > 2 ? args[2] : "register=5,login=10,post=20,get=35,list=20,patch=10";
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(0);
+        try {
+            LoadGenerator generator = new LoadGenerator("http://localhost:" + app.port(), mix, clients);
+            generator.seed();
+            System.out.println(generator.run(rate, seconds).format());
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Registers the accounts and posts the messages the workload relies on, one request at a time.
+     */
+    public void seed() throws Exception {
+        HttpClient client = clients[0];
+        for(int i = 0; i < SEED_ACCOUNTS; i++){
+            HttpResponse<Void> response = client.send(build(Endpoint.REGISTER), HttpResponse.BodyHandlers.discarding());
+            if(response.statusCode() != 200){
+                throw new IllegalStateException("seeding accounts failed with status " + response.statusCode());
+            }
+        }
+        for(int i = 0; i < SEED_MESSAGES; i++){
+            HttpResponse<Void> response = client.send(build(Endpoint.POST), HttpResponse.BodyHandlers.discarding());
+            if(response.statusCode() != 200){
+                throw new IllegalStateException("seeding messages failed with status " + response.statusCode());
+            }
+        }
+        highestMessageId.set(SEED_MESSAGES + 1);
+    }
+
+    /**
+     * Sends requests at the target rate for the given duration, then waits up to a minute for the last
+     * responses.
+     * @param rate the mean number of requests started per second.
+     * @param seconds how long to keep starting requests.
+     * @return the per-endpoint results.
+     */
+    public Report run(double rate, int seconds) throws InterruptedException {
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        AtomicInteger outstanding = new AtomicInteger();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long scheduled = start;
+        int next = 0;
+        while(scheduled < end){
+            long now;
+            while((now = System.nanoTime()) < scheduled){
+                LockSupport.parkNanos(scheduled - now);
+            }
+            Endpoint endpoint = pick();
+            HttpRequest request = build(endpoint);
+            Stats endpointStats = stats.get(endpoint);
+            long intended = scheduled;
+            long sent = System.nanoTime();
+            outstanding.incrementAndGet();
+            clients[next++ % clients.length].sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long done = System.nanoTime();
+                        int status = error == null ? response.statusCode() : 0;
+                        endpointStats.record(intended, sent, done, status);
+                        if(endpoint == Endpoint.POST && status == 200){
+                            highestMessageId.incrementAndGet();
+                        }
+                        outstanding.decrementAndGet();
+                    });
+            scheduled += (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+        }
+        long elapsed = System.nanoTime() - start;
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while(outstanding.get() > 0 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        return new Report(rate, elapsed, outstanding.get(), stats);
+    }
+
+    private Endpoint pick() {
+        int roll = random.nextInt(totalWeight);
+        for(Endpoint endpoint : Endpoint.values()){
+            roll -= weights[endpoint.ordinal()];
+            if(roll < 0){
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Builds a request for the endpoint. Only called from one thread, so the shared Random is safe to use.
+     */
+    private HttpRequest build(Endpoint endpoint) {
+        switch(endpoint){
+            case REGISTER:
+                return post("/register", "{\"username\":\"load-user-" + registered.incrementAndGet()
+                        + "\",\"password\":\"" + PASSWORD + "\"}");
+            case LOGIN:
+                return post("/login", "{\"username\":\"load-user-" + (1 + random.nextInt(SEED_ACCOUNTS))
+                        + "\",\"password\":\"" + PASSWORD + "\"}");
+            case POST:
+                return post("/messages", "{\"posted_by\":" + (2 + random.nextInt(SEED_ACCOUNTS))
+                        + ",\"message_text\":\"load message\",\"time_posted_epoch\":1669947792}");
+            case GET:
+                return HttpRequest.newBuilder(uri("/messages/" + randomMessageId())).build();
+            case LIST:
+                return HttpRequest.newBuilder(uri("/messages?limit=50")).build();
+            case PATCH:
+                return HttpRequest.newBuilder(uri("/messages/" + randomMessageId()))
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"patched message\"}"))
+                        .build();
+            default:
+                throw new IllegalArgumentException(endpoint.name());
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private int randomMessageId() {
+        return 1 + random.nextInt(Math.max(1, highestMessageId.get()));
+    }
+
+    /**
+     * Latencies and outcomes of one endpoint, recorded concurrently from the clients' completion threads.
+     */
+    public static class Stats {
+        private final AtomicHistogram responseTime = new AtomicHistogram(HIGHEST_TRACKABLE_MICROS, 2);
+        private final AtomicHistogram serviceTime = new AtomicHistogram(HIGHEST_TRACKABLE_MICROS, 2);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+
+        void record(long intended, long sent, long done, int status) {
+            responseTime.recordValue(micros(done - intended));
+            serviceTime.recordValue(micros(done - sent));
+            requests.increment();
+            if(status == 503){
+                shed.increment();
+            }
+            if(status < 200 || status >= 300){
+                errors.increment();
+            }
+        }
+
+        private static long micros(long nanos) {
+            return Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+        }
+
+        /**
+         * @return the number of completed requests, failed ones included.
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return the number of requests that failed to connect or got a status code other than 2xx.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return the number of requests shed with a 503 status code; these are also counted as errors.
+         */
+        public long getShed() {
+            return shed.sum();
+        }
+
+        /**
+         * @param quantile a quantile between 0 and 1.
+         * @return the response time at that quantile, measured from the scheduled send time, in microseconds.
+         */
+        public long getResponseTimeMicros(double quantile) {
+            return responseTime.getValueAtPercentile(quantile * 100);
+        }
+
+        /**
+         * @param quantile a quantile between 0 and 1.
+         * @return the service time at that quantile, measured from the actual send time, in microseconds.
+         */
+        public long getServiceTimeMicros(double quantile) {
+            return serviceTime.getValueAtPercentile(quantile * 100);
+        }
+    }
+
+    /**
+     * The outcome of one run.
+     */
+    public static class Report {
+        private final double targetRate;
+        private final long elapsedNanos;
+        private final int unfinished;
+        private final Map<Endpoint, Stats> stats;
+
+        Report(double targetRate, long elapsedNanos, int unfinished, Map<Endpoint, Stats> stats) {
+            this.targetRate = targetRate;
+            this.elapsedNanos = elapsedNanos;
+            this.unfinished = unfinished;
+            this.stats = stats;
+        }
+
+        /**
+         * @return the results of one endpoint.
+         */
+        public Stats get(Endpoint endpoint) {
+            return stats.get(endpoint);
+        }
+
+        /**
+         * @return the number of requests still without a response when the run gave up waiting.
+         */
+        public int getUnfinished() {
+            return unfinished;
+        }
+
+        /**
+         * @return a table with one row per requested endpoint and a total row. Latencies are in milliseconds.
+         */
+        public String format() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("target %.0f req/s over %.1f s, %d unfinished%n", targetRate, seconds, unfinished));
+            out.append(String.format("%-9s %8s %9s %7s %6s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests",
+                    "req/s", "errors", "503s", "p50", "p90", "p99", "p99.9", "max", "svc p99"));
+            long requests = 0;
+            long errors = 0;
+            for(Map.Entry<Endpoint, Stats> entry : stats.entrySet()){
+                Stats s = entry.getValue();
+                if(s.getRequests() == 0){
+                    continue;
+                }
+                requests += s.getRequests();
+                errors += s.getErrors();
+                out.append(String.format("%-9s %8d %9.1f %6.2f%% %6d", entry.getKey().name().toLowerCase(),
+                        s.getRequests(), s.getRequests() / seconds, 100.0 * s.getErrors() / s.getRequests(), s.getShed()));
+                for(double quantile : QUANTILES){
+                    out.append(String.format(" %9.2f", s.getResponseTimeMicros(quantile) / 1000.0));
+                }
+                out.append(String.format(" %9.2f %9.2f%n", s.responseTime.getMaxValue() / 1000.0,
+                        s.getServiceTimeMicros(0.99) / 1000.0));
+            }
+            out.append(String.format("%-9s %8d %9.1f %6.2f%%%n", "total", requests, requests / seconds,
+                    requests == 0 ? 0 : 100.0 * errors / requests));
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LoadGeneratorTest {
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the Javalin app on a random port.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        app.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A short, light run over every endpoint should complete every request without errors and record a
+     * latency for each endpoint.
+     */
+    @Test
+    public void lightLoadHasNoErrors() throws Exception {
+        LoadGenerator generator = new LoadGenerator("http://localhost:" + app.port(),
+                "register=1,login=1,post=1,get=1,list=1,patch=1", 4);
+        generator.seed();
+        LoadGenerator.Report report = generator.run(100, 2);
+        Assert.assertEquals(0, report.getUnfinished());
+        for(LoadGenerator.Endpoint endpoint : LoadGenerator.Endpoint.values()){
+            LoadGenerator.Stats stats = report.get(endpoint);
+            Assert.assertTrue(endpoint + " was not requested", stats.getRequests() > 0);
+            Assert.assertEquals(endpoint + " had errors", 0, stats.getErrors());
+            Assert.assertTrue(stats.getResponseTimeMicros(0.99) >= stats.getServiceTimeMicros(0.5));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.api.Trigger;
+
+import DAO.AccountDao;
+import DAO.MemoryStore;
+import DAO.MessageDao;
+import DAO.Storage;
+import Util.ConnectionUtil;
+
+/**
+ * Lets the endpoint tests run unchanged against the in-memory engine. After each test database reset, the
+ * store is emptied and the fixture rows are imported from H2 into it, and a trigger is put on H2's message
+ * table so rows a test updates or deletes with SQL straight against H2 change in the store too. Rows inserted
+ * that way are not mirrored, since the store assigns its own IDs; no test does that. Does nothing when H2 is
+ * the engine.
+ */
+public class MemoryStoreReset implements ConnectionUtil.ResetHook {
+
+    @Override
+    public void afterReset() {
+        if (!Storage.isMemory()) {
+            return;
+        }
+        MemoryStore store = Storage.memoryStore();
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            store.reset();
+            store.importFrom(new AccountDao(), new MessageDao());
+            statement.execute("create trigger message_memory_store_mirror after update, delete on message "
+                    + "for each row call \"" + Mirror.class.getName() + "\"");
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("could not reset the memory store", e);
+        }
+    }
+
+    /**
+     * Applies an update or delete made on H2's message table to the store. Rows are message_id, posted_by,
+     * message_text, time_posted_epoch.
+     */
+    public static class Mirror implements Trigger {
+
+        @Override
+        public void init(Connection connection, String schema, String trigger, String table, boolean before, int type) {
+        }
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            try {
+                int message_id = (Integer) oldRow[0];
+                if (newRow == null) {
+                    Storage.memoryStore().removeMessages(message_id);
+                } else {
+                    Storage.memoryStore().updateMessage(message_id, (String) newRow[2]);
+                }
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDao;
+import DAO.MemoryStore;
+import DAO.MessageDao;
+import DAO.WriteAheadLog;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class MemoryStoreTest {
+    Path directory;
+    MemoryStore store;
+
+    /**
+     * Before every test, reset the database, open a store in an empty directory and import the database into
+     * it.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        directory = Files.createTempDirectory("memstore");
+        store = open();
+        store.importFrom(new AccountDao(), new MessageDao());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private MemoryStore open() throws IOException {
+        return new MemoryStore(directory, WriteAheadLog.SyncPolicy.ALWAYS, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    private MemoryStore reopen() throws IOException {
+        store.close();
+        store = open();
+        return store;
+    }
+
+    private Path segment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("wal-"))
+                        .max(Comparator.naturalOrder()).get();
+        }
+    }
+
+    /**
+     * An imported store should hold what H2 holds and refuse a second import, and every change should survive
+     * a restart.
+     */
+    @Test
+    public void changesReplayAfterRestart() throws IOException {
+        Assert.assertTrue(store.isUser("testuser1"));
+        Assert.assertEquals("test message 1", store.getMessage(1).message_text);
+        Assert.assertThrows(IllegalStateException.class, () -> store.importFrom(new AccountDao(), new MessageDao()));
+
+        Account account = store.registerUser("user2", "password");
+        Message added = store.addMessage(new Message(account.account_id, "hello", 1669947800));
+        store.addMessages(Arrays.asList(new Message(1, "a", 1669947801), new Message(1, "b", 1669947802)));
+        store.updateMessage(added.message_id, "hello again");
+        store.removeMessages(1);
+        Assert.assertTrue(store.updatePassword(account.account_id, "password", "secret"));
+
+        MemoryStore reopened = reopen();
+        Assert.assertEquals("secret", reopened.getAccount("user2").password);
+        Assert.assertNull(reopened.getMessage(1));
+        Assert.assertEquals("hello again", reopened.getMessage(added.message_id).message_text);
+        Assert.assertEquals(3, reopened.getMessagesAfter(0, 10).size());
+        List<Message> byAccount = reopened.getMessagesAfter(1, 0, 10);
+        Assert.assertEquals(2, byAccount.size());
+        Assert.assertEquals("a", byAccount.get(0).message_text);
+    }
+
+    /**
+     * After a snapshot, a restart should load it and replay only the log written since.
+     */
+    @Test
+    public void snapshotThenLogReplay() throws IOException {
+        store.addMessage(new Message(1, "before", 1669947800));
+        store.snapshot();
+        Assert.assertEquals(0, store.getWalBytes());
+        Message after = store.addMessage(new Message(1, "after", 1669947801));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(2, files.count());
+        }
+        MemoryStore reopened = reopen();
+        Assert.assertEquals(3, reopened.getMessagesAfter(0, 10).size());
+        Assert.assertEquals("after", reopened.getMessage(after.message_id).message_text);
+    }
+
+    /**
+     * A record cut short by a crash should be dropped on replay, and later records should follow the intact
+     * ones.
+     */
+    @Test
+    public void tornRecordIsTruncated() throws IOException {
+        store.addMessage(new Message(1, "kept", 1669947800));
+        Message torn = store.addMessage(new Message(1, "torn", 1669947801));
+        store.close();
+        try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        MemoryStore reopened = open();
+        store = reopened;
+        Assert.assertNull(reopened.getMessage(torn.message_id));
+        Message next = reopened.addMessage(new Message(1, "next", 1669947802));
+        Assert.assertEquals(torn.message_id, next.message_id);
+
+        MemoryStore again = reopen();
+        Assert.assertEquals("kept", again.getMessage(2).message_text);
+        Assert.assertEquals("next", again.getMessage(next.message_id).message_text);
+    }
+
+    /**
+     * The store should enforce the same constraints as the H2 schema.
+     */
+    @Test
+    public void constraintsMatchSchema() throws IOException {
+        Assert.assertNull(store.registerUser("testuser1", "password"));
+        Assert.assertNull(store.addMessage(new Message(99, "no such author", 1669947800)));
+        char[] text = new char[256];
+        Arrays.fill(text, 'x');
+        Assert.assertNull(store.addMessage(new Message(1, new String(text), 1669947800)));
+        Assert.assertNotNull(store.addMessage(new Message(1, new String(text, 0, 255), 1669947800)));
+
+        List<Message> added = store.addMessages(Arrays.asList(new Message(1, "ok", 1669947801),
+                                                              new Message(99, "bad", 1669947802)));
+        Assert.assertNotNull(added.get(0));
+        Assert.assertNull(added.get(1));
+    }
+
+    /**
+     * Deleting the newest message should not let its ID be handed out again, even across a restart.
+     */
+    @Test
+    public void idsAreNotReused() throws IOException {
+        Message added = store.addMessage(new Message(1, "latest", 1669947800));
+        store.removeMessages(added.message_id);
+
+        Message next = reopen().addMessage(new Message(1, "next", 1669947801));
+        Assert.assertEquals(added.message_id + 1, next.message_id);
+
+        store.removeMessages(next.message_id);
+        store.snapshot();
+        Assert.assertEquals(next.message_id + 1, reopen().addMessage(new Message(1, "again", 1669947802)).message_id);
+    }
+
+    /**
+     * The time indexes should return a window in time order, resume after a position inside a run of equal
+     * times, and forget deleted messages.
+     */
+    @Test
+    public void timeIndexes() throws IOException {
+        Account other = store.registerUser("user2", "password");
+        Message late = store.addMessage(new Message(1, "late", 300));
+        Message tieA = store.addMessage(new Message(1, "tie a", 200));
+        Message tieB = store.addMessage(new Message(other.account_id, "tie b", 200));
+        Message early = store.addMessage(new Message(1, "early", 100));
+
+        List<Message> window = store.getMessagesBetween(100, 301, Long.MIN_VALUE, 0, 10);
+        Assert.assertEquals(Arrays.asList(early, tieA, tieB, late), window);
+        Assert.assertEquals(Arrays.asList(tieB, late), store.getMessagesBetween(100, 301, 200, tieA.message_id, 10));
+        Assert.assertEquals(Arrays.asList(tieA, late), store.getMessagesBetween(1, 150, 1000, Long.MIN_VALUE, 0, 10));
+
+        store.removeMessages(tieA.message_id);
+        Assert.assertEquals(Arrays.asList(late), reopen().getMessagesBetween(1, 150, 1000, Long.MIN_VALUE, 0, 10));
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDao;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+public class MessageServiceCacheTest {
+    MessageDao messageDao;
+    MessageService messageService;
+
+    /**
+     * Before every test, create a MessageService over a mock MessageDao.
+     */
+    @Before
+    public void setUp() {
+        messageDao = Mockito.mock(MessageDao.class);
+        messageService = new MessageService(messageDao, Mockito.mock(AccountService.class));
+    }
+
+    /**
+     * Repeated lookups of the same message should only reach the DAO once.
+     */
+    @Test
+    public void repeatedGetIsServedFromCache() {
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        Mockito.when(messageDao.getMessage(1)).thenReturn(message);
+
+        Assert.assertEquals(message, messageService.getMessage(1));
+        Assert.assertEquals(message, messageService.getMessage(1));
+        Mockito.verify(messageDao, Mockito.times(1)).getMessage(1);
+        Assert.assertEquals(1, messageService.getCacheStats().hitCount());
+    }
+
+    /**
+     * Lookups of a missing message should be cached too.
+     */
+    @Test
+    public void missingMessageIsNegativelyCached() {
+        Assert.assertNull(messageService.getMessage(7));
+        Assert.assertNull(messageService.getMessage(7));
+        Mockito.verify(messageDao, Mockito.times(1)).getMessage(7);
+    }
+
+    /**
+     * Updating a message should invalidate its cache entry, so the next read sees the new text.
+     */
+    @Test
+    public void updateInvalidatesCachedMessage() {
+        Message updatedRow = new Message(1, 1, "updated", 1669947792);
+        Mockito.when(messageDao.getMessage(1))
+                .thenReturn(new Message(1, 1, "test message 1", 1669947792))
+                .thenReturn(updatedRow);
+        Mockito.when(messageDao.updateMessage(Mockito.eq(1), Mockito.any())).thenReturn(updatedRow);
+
+        messageService.getMessage(1);
+        Message updated = messageService.updateMessage(1, new Message(1, "updated", 0));
+        Assert.assertEquals(updatedRow, updated);
+        Assert.assertEquals("updated", messageService.getMessage(1).message_text);
+        Mockito.verify(messageDao, Mockito.times(2)).getMessage(1);
+    }
+
+    /**
+     * Deleting a message should invalidate its cache entry.
+     */
+    @Test
+    public void deleteInvalidatesCachedMessage() {
+        Mockito.when(messageDao.getMessage(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792)).thenReturn(null);
+        Mockito.when(messageDao.removeMessage(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+
+        messageService.getMessage(1);
+        Assert.assertNotNull(messageService.deleteMessage(1));
+        Assert.assertNull(messageService.getMessage(1));
+    }
+
+    /**
+     * Writes to a message the cache knows is missing should not reach the DAO.
+     */
+    @Test
+    public void writesToKnownMissingMessageSkipDao() {
+        Assert.assertNull(messageService.getMessage(7));
+        Assert.assertNull(messageService.deleteMessage(7));
+        Assert.assertNull(messageService.updateMessage(7, new Message(1, "updated", 0)));
+        Mockito.verify(messageDao, Mockito.never()).removeMessage(7);
+        Mockito.verify(messageDao, Mockito.never()).updateMessage(Mockito.eq(7), Mockito.any());
+    }
+
+    /**
+     * An account's messages should be loaded with one query and then served in message_id order, whole or by
+     * page, without reaching the DAO again.
+     */
+    @Test
+    public void accountTimelineIsLoadedOnce() {
+        Mockito.when(messageDao.getAllMessages(1)).thenReturn(new ArrayList<>(Arrays.asList(
+                new Message(5, 1, "second", 1669947793), new Message(2, 1, "first", 1669947792))));
+
+        List<Message> messages = messageService.getAllMessages(1);
+        Assert.assertEquals(2, messages.get(0).message_id);
+        Assert.assertEquals(5, messages.get(1).message_id);
+        Assert.assertEquals(messages, messageService.getAllMessages(1));
+        Assert.assertEquals(1, messageService.getMessagePage(1, null, 1).items.size());
+        Mockito.verify(messageDao, Mockito.times(1)).getAllMessages(1);
+        Mockito.verify(messageDao, Mockito.never()).getMessagesAfter(Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+        Assert.assertEquals(2, messageService.getTimelineCacheStats().hitCount());
+    }
+
+    /**
+     * A page of an account whose timeline is not cached should be read with a keyset query of one page, not by
+     * loading the whole account.
+     */
+    @Test
+    public void uncachedAccountPageUsesKeysetQuery() {
+        Mockito.when(messageDao.getMessagesAfter(1, 0, 2)).thenReturn(new ArrayList<>(Arrays.asList(
+                new Message(2, 1, "first", 1669947792), new Message(5, 1, "second", 1669947793))));
+
+        Assert.assertEquals(1, messageService.getMessagePage(1, null, 1).items.size());
+        Mockito.verify(messageDao, Mockito.never()).getAllMessages(1);
+        Mockito.verify(messageDao, Mockito.times(1)).getMessagesAfter(1, 0, 2);
+    }
+
+    /**
+     * Creates, updates and deletes should be applied to a cached timeline instead of reloading it.
+     */
+    @Test
+    public void writesUpdateCachedTimeline() {
+        Mockito.when(messageDao.getAllMessages(1)).thenReturn(new ArrayList<>(Arrays.asList(
+                new Message(1, 1, "first", 1669947792), new Message(2, 1, "second", 1669947793))));
+        Mockito.when(messageDao.addMessage(Mockito.any())).thenReturn(new Message(3, 1, "third", 1669947794));
+        Mockito.when(messageDao.updateMessage(Mockito.eq(1), Mockito.any())).thenReturn(new Message(1, 1, "updated", 1669947792));
+        Mockito.when(messageDao.removeMessage(2)).thenReturn(new Message(2, 1, "second", 1669947793));
+
+        messageService.getAllMessages(1);
+        messageService.createMessage(1, new Message(0, "third", 1669947794));
+        messageService.updateMessage(1, new Message(1, "updated", 0));
+        messageService.deleteMessage(2);
+
+        List<Message> messages = messageService.getAllMessages(1);
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("updated", messages.get(0).message_text);
+        Assert.assertEquals(3, messages.get(1).message_id);
+        Mockito.verify(messageDao, Mockito.times(1)).getAllMessages(1);
+    }
+
+    /**
+     * A delete that reaches the DAO between a create's insert and its cache update should not be undone in
+     * the cache, the timeline or the search index.
+     */
+    @Test
+    public void deleteDuringCreateIsNotUndone() {
+        Message added = new Message(3, 1, "third", 1669947794);
+        Mockito.when(messageDao.getAllMessages(1)).thenReturn(new ArrayList<>());
+        Mockito.when(messageDao.removeMessage(3)).thenReturn(added);
+        Mockito.when(messageDao.addMessage(Mockito.any())).thenAnswer(invocation -> {
+            messageService.deleteMessage(3);
+            return added;
+        });
+
+        messageService.getAllMessages(1);
+        Assert.assertEquals(added, messageService.createMessage(1, new Message(0, "third", 1669947794)));
+
+        Assert.assertTrue(messageService.getAllMessages(1).isEmpty());
+        Assert.assertNull(messageService.getMessage(3));
+        Assert.assertTrue(messageService.searchMessages("third", 10).isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.Storage;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after GET localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text holding the route's latency quantiles and status count, and the timing
+     *  of the DAO query it made
+     */
+    @Test
+    public void metricsIncludeRouteAndQuery() throws IOException, InterruptedException {
+        Metrics.Route route = Metrics.route("GET", "/messages/{message_id}");
+        long before = route.getStatusCount(200);
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+
+        String body = response.body();
+        Assert.assertEquals(before + 1, route.getStatusCount(200));
+        Assert.assertEquals(0, route.getInFlight());
+        Assert.assertTrue(body.contains("http_request_duration_seconds{method=\"GET\",route=\"/messages/{message_id}\",quantile=\"0.99\"} "));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"} " + (before + 1) + "\n"));
+        Assert.assertTrue(body.contains("dao_query_duration_seconds_count{dao=\"MessageDao\",method=\"getMessage\"} "));
+        Assert.assertTrue(body.contains("bulkhead_rejected_total{bulkhead=\"read\"} "));
+        Assert.assertTrue(body.contains("bulkhead_rejected_total{bulkhead=\"export\"} "));
+        Assert.assertTrue(body.contains(Storage.isMemory() ? "memory_store_sync_failures_total " : "db_pool_active_connections "));
+    }
+
+    /**
+     * Quantiles read from a timer should be within the histogram's two significant digits of the recorded values.
+     */
+    @Test
+    public void timerQuantiles() {
+        Metrics.Timer timer = Metrics.query("MetricsTest", "timerQuantiles");
+        for(int i = 1; i <= 1000; i++){
+            timer.record(i * 1_000_000L);
+        }
+        Assert.assertEquals(1000, timer.getCount());
+        Assert.assertEquals(500_000_000L, timer.getValueAtQuantile(0.5), 5_000_000L);
+        Assert.assertEquals(990_000_000L, timer.getValueAtQuantile(0.99), 10_000_000L);
+    }
+}
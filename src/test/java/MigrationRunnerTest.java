@@ -0,0 +1,72 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.MigrationRunner;
+
+public class MigrationRunnerTest {
+    Connection connection;
+
+    /**
+     * Before every test, open a connection to a fresh in-memory database.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:migrationtest", "sa", "sa");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Running the migrations twice should apply every script once and then do nothing.
+     */
+    @Test
+    public void migrationsAreAppliedOnce() throws SQLException {
+        MigrationRunner runner = new MigrationRunner();
+        Assert.assertTrue(runner.migrate(connection) > 0);
+        Assert.assertEquals(0, runner.migrate(connection));
+    }
+
+    /**
+     * The per-account and time-ordered message queries should be served by the new indexes.
+     */
+    @Test
+    public void messageQueriesUseIndexes() throws SQLException {
+        new MigrationRunner().migrate(connection);
+        Assert.assertTrue(plan("select * from message where posted_by = 1 and message_id > 0 order by message_id")
+                .contains("MESSAGE_POSTED_BY_ID_IDX"));
+        Assert.assertTrue(plan("select * from message where time_posted_epoch >= 0 order by time_posted_epoch, message_id")
+                .contains("MESSAGE_TIME_POSTED_IDX"));
+    }
+
+    /**
+     * Editing an applied script should stop the runner instead of silently diverging.
+     */
+    @Test
+    public void modifiedMigrationIsRejected() throws SQLException {
+        MigrationRunner runner = new MigrationRunner();
+        runner.migrate(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("update schema_migrations set checksum = 'changed' where version = 1");
+        }
+        Assert.assertThrows(IllegalStateException.class, () -> runner.migrate(connection));
+    }
+
+    private String plan(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("explain " + sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
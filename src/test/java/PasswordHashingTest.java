@@ -0,0 +1,87 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDao;
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+
+public class PasswordHashingTest {
+    AccountDao accountDao;
+    AccountService accountService;
+
+    /**
+     * Before every test, reset the database. Its one account still has a plaintext password.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountDao = new AccountDao();
+        accountService = new AccountService(accountDao);
+    }
+
+    /**
+     * A hash should verify its own password only, and two hashes of one password should differ by their salt.
+     */
+    @Test
+    public void hashVerifiesOnlyItsPassword() {
+        PasswordHasher hasher = new PasswordHasher(1000);
+        String hash = hasher.hash("password");
+        Assert.assertTrue(PasswordHasher.isHash(hash));
+        Assert.assertTrue(hasher.verify("password", hash));
+        Assert.assertFalse(hasher.verify("Password", hash));
+        Assert.assertNotEquals(hash, hasher.hash("password"));
+    }
+
+    /**
+     * A hash made with fewer iterations should still verify but be flagged for rehashing.
+     */
+    @Test
+    public void lowerWorkFactorNeedsRehash() {
+        String hash = new PasswordHasher(500).hash("password");
+        PasswordHasher hasher = new PasswordHasher(1000);
+        Assert.assertTrue(hasher.verify("password", hash));
+        Assert.assertTrue(hasher.needsRehash(hash));
+        Assert.assertFalse(hasher.needsRehash(hasher.hash("password")));
+    }
+
+    /**
+     * Registration should store only a hash, and the password should still log in.
+     */
+    @Test
+    public void registrationStoresHash() {
+        Account registered = accountService.registerUser(new Account("user", "secret"));
+        Assert.assertEquals(new Account(2, "user", "secret"), registered);
+        Assert.assertTrue(PasswordHasher.isHash(accountDao.getAccount("user").password));
+        Assert.assertEquals(registered, accountService.verifyAccountDetails(new Account("user", "secret")));
+        Assert.assertNull(accountService.verifyAccountDetails(new Account("user", "wrong")));
+    }
+
+    /**
+     * A successful login against a plaintext row should replace it with a hash; a failed one should not.
+     */
+    @Test
+    public void loginUpgradesPlaintextPassword() {
+        Assert.assertNull(accountService.verifyAccountDetails(new Account("testuser1", "wrong")));
+        Assert.assertEquals("password", accountDao.getAccount("testuser1").password);
+
+        Account verified = accountService.verifyAccountDetails(new Account("testuser1", "password"));
+        Assert.assertEquals(new Account(1, "testuser1", "password"), verified);
+        Assert.assertTrue(PasswordHasher.isHash(accountDao.getAccount("testuser1").password));
+        Assert.assertEquals(verified, accountService.verifyAccountDetails(new Account("testuser1", "password")));
+    }
+
+    /**
+     * The bulk migration should hash every plaintext row and leave nothing to do on a second run.
+     */
+    @Test
+    public void hashPlaintextPasswords() {
+        accountDao.registerUser(new Account("legacy", "legacy-password"));
+        Assert.assertEquals(2, accountService.hashPlaintextPasswords());
+        Assert.assertEquals(0, accountService.hashPlaintextPasswords());
+        Assert.assertNotNull(accountService.verifyAccountDetails(new Account("legacy", "legacy-password")));
+        Assert.assertNotNull(accountService.verifyAccountDetails(new Account("testuser1", "password")));
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.ResponseCompression;
+import io.javalin.Javalin;
+
+public class ResponseCompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void postMessages(int count) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"message ")
+                    .append(i).append("\",\"time_posted_epoch\":1669947792}");
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The preferred coding should be chosen by q-value, gzip should win ties, and refused codings should not
+     * be chosen.
+     */
+    @Test
+    public void negotiateCoding() {
+        Assert.assertNull(ResponseCompression.negotiate(null));
+        Assert.assertNull(ResponseCompression.negotiate("br, identity"));
+        Assert.assertEquals("gzip", ResponseCompression.negotiate("deflate, gzip, br"));
+        Assert.assertEquals("deflate", ResponseCompression.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("deflate", ResponseCompression.negotiate("gzip;q=0, *"));
+        Assert.assertEquals("gzip", ResponseCompression.negotiate("*"));
+    }
+
+    /**
+     * A large list should be sent gzipped or deflated to clients that accept it, with the same content as the
+     * plain response and a different entity tag per coding.
+     */
+    @Test
+    public void largeListIsCompressed() throws IOException, InterruptedException {
+        postMessages(200);
+        HttpResponse<byte[]> plain = get("/messages", null);
+        Assert.assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+        String json = new String(plain.body(), StandardCharsets.UTF_8);
+
+        HttpResponse<byte[]> gzipped = get("/messages", "gzip");
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertTrue(gzipped.body().length < plain.body().length / 4);
+        Assert.assertEquals(json, decode(new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))));
+        Assert.assertNotEquals(plain.headers().firstValue("ETag"), gzipped.headers().firstValue("ETag"));
+
+        HttpResponse<byte[]> deflated = get("/accounts/1/messages", "deflate");
+        Assert.assertEquals("deflate", deflated.headers().firstValue("Content-Encoding").orElseThrow());
+        Assert.assertEquals(json, decode(new InflaterInputStream(new ByteArrayInputStream(deflated.body()))));
+    }
+
+    /**
+     * A small list should be sent as it is, and an unchanged list should be served from the cached bytes
+     * until a message is posted.
+     */
+    @Test
+    public void unchangedListIsCached() throws IOException, InterruptedException {
+        HttpResponse<byte[]> small = get("/messages", "gzip");
+        Assert.assertTrue(small.headers().firstValue("Content-Encoding").isEmpty());
+
+        postMessages(200);
+        byte[] first = get("/messages", "gzip").body();
+        Assert.assertArrayEquals(first, get("/messages", "gzip").body());
+
+        postMessages(1);
+        HttpResponse<byte[]> changed = get("/messages", "gzip");
+        String json = decode(new GZIPInputStream(new ByteArrayInputStream(changed.body())));
+        Assert.assertTrue(json.contains("\"message_id\":202"));
+    }
+
+    /**
+     * A single message should be tagged separately for clients that accept gzip, since Javalin may gzip its
+     * body for them, and its response should vary on Accept-Encoding.
+     */
+    @Test
+    public void messageTaggedPerCoding() throws IOException, InterruptedException {
+        HttpResponse<byte[]> plain = get("/messages/1", null);
+        HttpResponse<byte[]> gzipped = get("/messages/1", "gzip, deflate");
+        Assert.assertEquals("Accept-Encoding", plain.headers().firstValue("Vary").orElseThrow());
+        Assert.assertEquals("Accept-Encoding", gzipped.headers().firstValue("Vary").orElseThrow());
+        Assert.assertNotEquals(plain.headers().firstValue("ETag").orElseThrow(), gzipped.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(plain.headers().firstValue("ETag"), get("/messages/1", "deflate").headers().firstValue("ETag"));
+    }
+}
@@ -0,0 +1,42 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ScalableBloomFilter;
+
+public class ScalableBloomFilterTest {
+
+    /**
+     * Every added entry must be reported as possibly present, including after the filter has grown.
+     */
+    @Test
+    public void noFalseNegativesAfterGrowth() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        for(int i = 0; i < 1000; i++){
+            filter.put("user" + i);
+        }
+        for(int i = 0; i < 1000; i++){
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+        Assert.assertTrue(filter.getStageCount() > 1);
+        Assert.assertEquals(1000, filter.getApproximateCount());
+    }
+
+    /**
+     * The observed false-positive rate should stay within twice the target.
+     */
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for(int i = 0; i < 5000; i++){
+            filter.put("user" + i);
+        }
+        int falsePositives = 0;
+        for(int i = 0; i < 100_000; i++){
+            if(filter.mightContain("other" + i)){
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+        Assert.assertTrue(filter.getFillRatio() > 0 && filter.getFillRatio() < 1);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.SearchIndex;
+
+public class SearchIndexTest {
+
+    /**
+     * Terms should be combined with AND by default and with OR when asked, a trailing * should match by
+     * prefix, and documents where the terms weigh more should rank first.
+     */
+    @Test
+    public void andOrPrefixAndRanking() {
+        SearchIndex index = new SearchIndex();
+        index.put(1, "The quick brown fox");
+        index.put(2, "A lazy brown dog");
+        index.put(3, "Fox news: fox sightings up");
+        index.put(4, "Quickly, quietly");
+
+        Assert.assertArrayEquals(new int[] {1}, index.search("brown fox", 10));
+        Assert.assertArrayEquals(new int[] {3, 1}, index.search("fox", 10));
+        Assert.assertArrayEquals(new int[] {3}, index.search("fox", 1));
+        int[] either = index.search("dog OR quick brown", 10);
+        Arrays.sort(either);
+        Assert.assertArrayEquals(new int[] {1, 2}, either);
+        Assert.assertEquals(2, index.search("quick*", 10).length);
+        Assert.assertEquals(0, index.search("cat", 10).length);
+    }
+
+    /**
+     * Updated and deleted documents should stop matching their old terms, and a term whose documents are all
+     * gone should be dropped from the index.
+     */
+    @Test
+    public void updatesAndDeletesAreApplied() {
+        SearchIndex index = new SearchIndex();
+        for (int id = 1; id <= 100; id++) {
+            index.put(id, "common word " + id);
+        }
+        index.put(50, "replaced text");
+        index.remove(60);
+        index.put(7, "common rare");
+        for (int id = 40; id > 20; id--) {
+            index.put(id, "common word " + id + " late");
+        }
+
+        Assert.assertEquals(98, index.search("common", 1000).length);
+        Assert.assertArrayEquals(new int[] {50}, index.search("replaced", 10));
+        Assert.assertEquals(0, index.search("60", 10).length);
+        Assert.assertArrayEquals(new int[] {7}, index.search("rare", 10));
+        Assert.assertEquals(20, index.search("late", 100).length);
+        Assert.assertArrayEquals(new int[] {40}, index.search("late 40", 10));
+
+        int terms = index.getTermCount();
+        index.remove(50);
+        Assert.assertEquals(terms - 2, index.getTermCount());
+    }
+
+    /**
+     * An index over its cap should drop the documents with the lowest IDs, and not take them back when they
+     * are updated.
+     */
+    @Test
+    public void capDropsOldestDocuments() {
+        SearchIndex index = new SearchIndex(3);
+        index.put(1, "alpha");
+        index.put(2, "alpha beta");
+        index.remove(2);
+        index.put(3, "alpha");
+        index.put(4, "alpha");
+        index.put(5, "alpha");
+
+        Assert.assertEquals(3, index.getDocumentCount());
+        Assert.assertArrayEquals(new int[] {5, 4, 3}, index.search("alpha", 10));
+        Assert.assertEquals(0, index.search("beta", 10).length);
+
+        index.put(1, "alpha again");
+        Assert.assertEquals(3, index.getDocumentCount());
+        Assert.assertEquals(0, index.search("again", 10).length);
+    }
+
+    /**
+     * A document that gets back a term it lost should revive its stale posting rather than gain a second one,
+     * so it is matched and scored once and the lists do not grow with each round trip.
+     */
+    @Test
+    public void readdedTermIsNotDuplicated() {
+        SearchIndex index = new SearchIndex();
+        index.put(1, "alpha beta");
+        index.put(2, "alpha gamma");
+        index.put(3, "delta");
+        long bytes = index.getPostingBytes();
+        for (int i = 0; i < 10; i++) {
+            index.put(1, "beta");
+            index.put(1, "alpha beta");
+            Assert.assertEquals(bytes, index.getPostingBytes());
+        }
+        Assert.assertArrayEquals(new int[] {2, 1}, index.search("alpha", 10));
+        Assert.assertArrayEquals(new int[] {2, 1}, index.search("alpha OR alpha*", 10));
+    }
+
+    /**
+     * Only the best limit matches should be returned, best first, with ties going to the newer document.
+     */
+    @Test
+    public void topMatchesAreKept() {
+        SearchIndex index = new SearchIndex();
+        for (int id = 1; id <= 50; id++) {
+            index.put(id, id % 10 == 0 ? "common common" : "common filler");
+        }
+        Assert.assertArrayEquals(new int[] {50, 40, 30}, index.search("common", 3));
+        Assert.assertEquals(50, index.search("common", 100).length);
+        Assert.assertEquals(0, index.search("common", 0).length);
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper
+     * for interacting locally on the web, and post messages whose times are out of message_id order.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        // message_id 2..6 posted at 500, 100, 300, 300, 200; the fixture message 1 is at 1669947792
+        StringBuilder body = new StringBuilder("[");
+        long[] times = {500, 100, 300, 300, 200};
+        for (int i = 0; i < times.length; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"at ").append(times[i])
+                    .append("\",\"time_posted_epoch\":").append(times[i]).append("}");
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private MessagePage page(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private static int[] ids(MessagePage page) {
+        return page.items.stream().mapToInt(message -> message.message_id).toArray();
+    }
+
+    /**
+     * A from/to window should return the messages posted in it in time order, with ties broken by message_id,
+     * and the cursor should continue the window where the page ended, including inside a run of equal times.
+     */
+    @Test
+    public void windowIsReturnedInTimeOrder() throws IOException, InterruptedException {
+        Assert.assertArrayEquals(new int[] {3, 6, 4, 5}, ids(page("/messages?from=100&to=500")));
+
+        MessagePage first = page("/messages?from=100&to=500&limit=3");
+        Assert.assertArrayEquals(new int[] {3, 6, 4}, ids(first));
+        MessagePage second = page("/messages?from=100&to=500&limit=3&cursor=" + first.next);
+        Assert.assertArrayEquals(new int[] {5}, ids(second));
+        Assert.assertNull(second.next);
+    }
+
+    /**
+     * since should be exclusive and combine with to, and the per-account list should apply the same window.
+     */
+    @Test
+    public void sinceAndPerAccount() throws IOException, InterruptedException {
+        Assert.assertArrayEquals(new int[] {4, 5, 2, 1}, ids(page("/messages?since=200")));
+        Assert.assertArrayEquals(new int[] {4, 5}, ids(page("/accounts/1/messages?since=200&to=500")));
+        Assert.assertArrayEquals(new int[] {}, ids(page("/accounts/2/messages?since=0")));
+        Assert.assertEquals(400, get("/messages?from=yesterday").statusCode());
+    }
+}